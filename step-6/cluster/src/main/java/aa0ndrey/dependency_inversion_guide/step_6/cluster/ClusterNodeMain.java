@@ -0,0 +1,77 @@
+package aa0ndrey.dependency_inversion_guide.step_6.cluster;
+
+import aa0ndrey.dependency_inversion_guide.step_6.cluster.membership.ClusterMembership;
+import aa0ndrey.dependency_inversion_guide.step_6.cluster.membership.ClusterNode;
+import aa0ndrey.dependency_inversion_guide.step_6.cluster.order.ClusteredOrderService;
+import aa0ndrey.dependency_inversion_guide.step_6.cluster.rpc.RpcServer;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderContext;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.OrderService;
+import aa0ndrey.dependency_inversion_guide.step_6.core.warm_up.OrderServiceWarmUp;
+import aa0ndrey.dependency_inversion_guide.step_6.core.warm_up.WarmUpReport;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.warm_up.PostgresOrderServiceWarmUp;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.UUID;
+
+//запуск узла на loopback: ClusterNodeMain node-1 node-1=127.0.0.1:7001 node-2=127.0.0.1:7002
+//все узлы запускаются с одним составом, его эпоха - 1
+//каждая строка stdin - userId (или пустая строка для случайного), узел создает заказ локально или пересылает владельцу;
+//ClusterNodeMain --train только прогревает сервис и завершается: это обучающий запуск для динамического архива AppCDS,
+//java -XX:ArchiveClassesAtExit=cluster-node.jsa ... ClusterNodeMain --train, затем узлы запускаются
+//с -XX:SharedArchiveFile=cluster-node.jsa; архив собирает профиль appcds модуля (mvn package -Pappcds),
+//классы в архив попадают только из jar, а не из каталогов classpath
+public class ClusterNodeMain {
+    private static final System.Logger LOGGER = System.getLogger(ClusterNodeMain.class.getName());
+    private static final String TRAIN = "--train";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1 && args[0].equals(TRAIN)) {
+            LOGGER.log(System.Logger.Level.INFO, "Обучающий запуск: " + warmUp(PostgresOrderServiceWarmUp.createOrderService()));
+            return;
+        }
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Ожидается: <id узла> <id=host:port>... или " + TRAIN);
+        }
+        var nodes = new ArrayList<ClusterNode>();
+        for (var i = 1; i < args.length; i++) {
+            nodes.add(ClusterNode.parse(args[i]));
+        }
+        var self = nodes.stream()
+                .filter(it -> it.getId().equals(args[0]))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Узел " + args[0] + " отсутствует в составе кластера"));
+
+        //хранилище примера - адаптеры прогрева, поэтому узлу не нужна база;
+        //прогревается тот же экземпляр OrderService, который затем обслуживает запросы
+        var orderService = PostgresOrderServiceWarmUp.createOrderService();
+        LOGGER.log(System.Logger.Level.INFO, "Прогрев: " + warmUp(orderService));
+        var service = new ClusteredOrderService(self.getId(), new ClusterMembership(nodes, 1), orderService, 4, 1000);
+
+        try (var server = new RpcServer(self.getHost(), self.getPort(), service)) {
+            server.start();
+            LOGGER.log(System.Logger.Level.INFO, "Узел " + self.getId() + " слушает " + self.getHost() + ":" + self.getPort());
+
+            var reader = new BufferedReader(new InputStreamReader(System.in));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                var userId = line.isBlank() ? UUID.randomUUID() : UUID.fromString(line.trim());
+                var context = new CreateOrderContext(new CreateOrderRequest(userId, UUID.randomUUID()));
+                try {
+                    service.create(context);
+                    var owner = service.getMembership().owner(userId).getId();
+                    LOGGER.log(System.Logger.Level.INFO, userId + " -> " + owner + ": " + context.getCreatedOrder().getId());
+                } catch (RuntimeException e) {
+                    LOGGER.log(System.Logger.Level.WARNING, "Заказ пользователя " + userId + " не создан", e);
+                }
+            }
+        }
+    }
+
+    private static WarmUpReport warmUp(OrderService orderService) {
+        return new OrderServiceWarmUp(1_000, 3, Duration.ofSeconds(10)).run(orderService);
+    }
+}
@@ -0,0 +1,126 @@
+package aa0ndrey.dependency_inversion_guide.step_6.cluster.membership;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+//статический состав кластера, владелец пользователя выбирается rendezvous-хешированием:
+//при входе или выходе узла переезжают только пользователи, чей владелец действительно сменился;
+//каждый состав имеет эпоху, одинаковую на всех узлах, и изменение состава обязано ее увеличить;
+//узлы узнают о новом составе не одновременно, отставший узел получает его от соседей при пересылке запросов
+public class ClusterMembership {
+    private volatile View view;
+
+    public ClusterMembership(List<ClusterNode> nodes, long epoch) {
+        update(new ArrayList<>(nodes), epoch);
+    }
+
+    public synchronized void join(ClusterNode node, long epoch) {
+        var updated = new ArrayList<>(List.of(view.nodes));
+        updated.removeIf(it -> it.getId().equals(node.getId()));
+        updated.add(node);
+        update(updated, epoch);
+    }
+
+    public synchronized void leave(String nodeId, long epoch) {
+        var updated = new ArrayList<>(List.of(view.nodes));
+        updated.removeIf(it -> it.getId().equals(nodeId));
+        update(updated, epoch);
+    }
+
+    //применяет состав, полученный от другого узла; false, если он не новее текущего
+    public synchronized boolean apply(List<ClusterNode> nodes, long epoch) {
+        if (epoch <= view.epoch) {
+            return false;
+        }
+        update(new ArrayList<>(nodes), epoch);
+        return true;
+    }
+
+    public List<ClusterNode> getNodes() {
+        return view.getNodes();
+    }
+
+    public long getEpoch() {
+        return view.epoch;
+    }
+
+    //узлы и эпоха одного и того же состава
+    public View view() {
+        return view;
+    }
+
+    public ClusterNode owner(UUID userId) {
+        return ownership(userId).getNode();
+    }
+
+    //владелец и эпоха берутся из одного состава
+    public Ownership ownership(UUID userId) {
+        var current = view;
+        var currentNodes = current.nodes;
+        var currentHashes = current.hashes;
+        if (currentNodes.length == 0) {
+            throw new IllegalStateException("В кластере нет узлов");
+        }
+
+        var key = userId.getMostSignificantBits() ^ Long.rotateLeft(userId.getLeastSignificantBits(), 32);
+        var owner = 0;
+        var maxWeight = Long.MIN_VALUE;
+        for (var i = 0; i < currentNodes.length; i++) {
+            var weight = mix(key ^ currentHashes[i]);
+            if (weight > maxWeight) {
+                maxWeight = weight;
+                owner = i;
+            }
+        }
+        return new Ownership(currentNodes[owner], current.epoch);
+    }
+
+    private void update(List<ClusterNode> updated, long epoch) {
+        if (view != null && epoch <= view.epoch) {
+            throw new IllegalArgumentException("Эпоха состава кластера должна расти: " + view.epoch + " -> " + epoch);
+        }
+        var hashes = new long[updated.size()];
+        for (var i = 0; i < hashes.length; i++) {
+            hashes[i] = hash(updated.get(i).getId());
+        }
+        this.view = new View(updated.toArray(new ClusterNode[0]), hashes, epoch);
+    }
+
+    private static long hash(String value) {
+        var hash = 0xcbf29ce484222325L;
+        for (var i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    //узлы и их хеши публикуются одной ссылкой, чтобы читатель не увидел массивы от разных составов
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class View {
+        private final ClusterNode[] nodes;
+        private final long[] hashes;
+        private final long epoch;
+
+        public List<ClusterNode> getNodes() {
+            return List.of(nodes);
+        }
+
+        public long getEpoch() {
+            return epoch;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package aa0ndrey.dependency_inversion_guide.step_6.cluster.membership;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ClusterNode {
+    private String id;
+    private String host;
+    private int port;
+
+    //формат: id=host:port
+    public static ClusterNode parse(String value) {
+        var separator = value.indexOf('=');
+        var portSeparator = value.lastIndexOf(':');
+        if (separator <= 0 || portSeparator <= separator) {
+            throw new IllegalArgumentException("Некорректное описание узла: " + value);
+        }
+        return new ClusterNode(
+                value.substring(0, separator),
+                value.substring(separator + 1, portSeparator),
+                Integer.parseInt(value.substring(portSeparator + 1))
+        );
+    }
+}
@@ -0,0 +1,11 @@
+package aa0ndrey.dependency_inversion_guide.step_6.cluster.membership;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class Ownership {
+    private final ClusterNode node;
+    private final long epoch;
+}
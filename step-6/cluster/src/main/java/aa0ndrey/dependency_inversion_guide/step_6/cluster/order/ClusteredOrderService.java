@@ -0,0 +1,187 @@
+package aa0ndrey.dependency_inversion_guide.step_6.cluster.order;
+
+import aa0ndrey.dependency_inversion_guide.step_6.cluster.membership.ClusterMembership;
+import aa0ndrey.dependency_inversion_guide.step_6.cluster.membership.ClusterNode;
+import aa0ndrey.dependency_inversion_guide.step_6.cluster.rpc.NotOwnerException;
+import aa0ndrey.dependency_inversion_guide.step_6.cluster.rpc.RpcClient;
+import aa0ndrey.dependency_inversion_guide.step_6.cluster.rpc.RpcHandler;
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderContext;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.Order;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.OrderService;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//заказы пользователя создает только узел-владелец, поэтому проверка баланса не гоняется с другими узлами,
+//запросы чужих пользователей пересылаются владельцу;
+//узел выполняет запрос только в своей текущей эпохе: пересланный запрос с другой эпохой отклоняется,
+//а смена состава дожидается локальных запросов, начатых в прежней эпохе;
+//отказ владельца содержит его состав: отставший отправитель применяет его, а отставшему владельцу
+//отправитель передает свой, после чего запрос повторяется;
+//запись в хранилище эпохой не ограничивается: пока прежний владелец не узнал о новом составе,
+//он продолжает создавать заказы своих бывших пользователей локально одновременно с новым владельцем,
+//и в этом окне проверка баланса может гоняться; окно сокращается рассылкой состава при join и leave
+@RequiredArgsConstructor
+public class ClusteredOrderService implements RpcHandler {
+    private static final System.Logger LOGGER = System.getLogger(ClusteredOrderService.class.getName());
+
+    //отказ с чужим составом, повтор после его применения и повтор после передачи своего состава
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Getter
+    private final String nodeId;
+    @Getter
+    private final ClusterMembership membership;
+    private final OrderService orderService;
+    private final int maxConnectionsPerNode;
+    private final int rpcTimeoutMillis;
+    private final Map<String, RpcClient> clients = new ConcurrentHashMap<>();
+    private final ReadWriteLock epochLock = new ReentrantReadWriteLock();
+
+    public void create(CreateOrderContext context) {
+        var request = context.getRequest();
+        NotOwnerException lastError = null;
+        for (var attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            request.getDeadline().check();
+            var ownership = membership.ownership(request.getUserId());
+            if (ownership.getNode().getId().equals(nodeId)) {
+                if (createLocally(context, ownership.getEpoch())) {
+                    return;
+                }
+                continue;
+            }
+
+            var client = client(ownership.getNode());
+            try {
+                context.setCreatedOrder(client.createOrder(request, ownership.getEpoch()));
+                return;
+            } catch (NotOwnerException e) {
+                lastError = e;
+                if (e.getEpoch() > ownership.getEpoch()) {
+                    updateMembership(e.getNodes(), e.getEpoch());
+                } else if (e.getEpoch() < ownership.getEpoch()) {
+                    var view = membership.view();
+                    client.updateMembership(view.getNodes(), view.getEpoch(), request.getDeadline());
+                }
+            }
+        }
+        if (lastError != null) {
+            throw lastError;
+        }
+        var view = membership.view();
+        throw new NotOwnerException("Не удалось определить владельца пользователя " + request.getUserId(), view.getNodes(), view.getEpoch());
+    }
+
+    //вызывается для запросов, пересланных другими узлами, повторная пересылка не выполняется
+    @Override
+    public Order createOrder(CreateOrderRequest request, long epoch) {
+        var context = new CreateOrderContext(request);
+        epochLock.readLock().lock();
+        try {
+            var view = membership.view();
+            if (epoch != view.getEpoch()) {
+                throw new NotOwnerException(
+                        "Эпоха отправителя " + epoch + " не совпадает с эпохой узла " + view.getEpoch(),
+                        view.getNodes(),
+                        view.getEpoch()
+                );
+            }
+            var owner = membership.owner(request.getUserId());
+            if (!owner.getId().equals(nodeId)) {
+                throw new NotOwnerException("Узел " + nodeId + " не владеет пользователем " + request.getUserId(), view.getNodes(), view.getEpoch());
+            }
+            orderService.create(context);
+        } finally {
+            epochLock.readLock().unlock();
+        }
+        return context.getCreatedOrder();
+    }
+
+    @Override
+    public void updateMembership(List<ClusterNode> nodes, long epoch) {
+        changeMembership(() -> membership.apply(nodes, epoch));
+    }
+
+    public void join(ClusterNode node, long epoch) {
+        var previous = membership.getNodes();
+        changeMembership(() -> membership.join(node, epoch));
+        broadcast(previous);
+    }
+
+    public void leave(String leavingNodeId, long epoch) {
+        var previous = membership.getNodes();
+        changeMembership(() -> membership.leave(leavingNodeId, epoch));
+        broadcast(previous);
+    }
+
+    //false, если эпоха сменилась между выбором владельца и захватом блокировки
+    private boolean createLocally(CreateOrderContext context, long epoch) {
+        epochLock.readLock().lock();
+        try {
+            if (epoch != membership.getEpoch()) {
+                return false;
+            }
+            orderService.create(context);
+            return true;
+        } finally {
+            epochLock.readLock().unlock();
+        }
+    }
+
+    //соединения к узлам, которые исчезли из состава или сменили адрес, закрываются
+    private void changeMembership(Runnable change) {
+        epochLock.writeLock().lock();
+        try {
+            change.run();
+        } finally {
+            epochLock.writeLock().unlock();
+        }
+        var nodes = membership.getNodes();
+        for (var entry : clients.entrySet()) {
+            var current = nodes.stream().filter(it -> it.getId().equals(entry.getKey())).findFirst();
+            if (current.isEmpty() || !matches(current.get(), entry.getValue())) {
+                if (clients.remove(entry.getKey(), entry.getValue())) {
+                    entry.getValue().close();
+                }
+            }
+        }
+    }
+
+    //новый состав получают и узлы прежнего состава, в том числе покинувший кластер, чтобы он перестал считать себя владельцем
+    private void broadcast(List<ClusterNode> previous) {
+        var view = membership.view();
+        var recipients = new LinkedHashSet<>(previous);
+        recipients.addAll(view.getNodes());
+        for (var node : recipients) {
+            if (node.getId().equals(nodeId)) {
+                continue;
+            }
+            try (var client = new RpcClient(node.getHost(), node.getPort(), 1, rpcTimeoutMillis)) {
+                client.updateMembership(view.getNodes(), view.getEpoch(), Deadline.after(Duration.ofMillis(rpcTimeoutMillis)));
+            } catch (RuntimeException e) {
+                //узел узнает о составе при следующей пересылке запроса
+                LOGGER.log(System.Logger.Level.WARNING, "Не удалось передать состав кластера узлу " + node.getId(), e);
+            }
+        }
+    }
+
+    private RpcClient client(ClusterNode node) {
+        return clients.computeIfAbsent(
+                node.getId(),
+                id -> new RpcClient(node.getHost(), node.getPort(), maxConnectionsPerNode, rpcTimeoutMillis)
+        );
+    }
+
+    private static boolean matches(ClusterNode node, RpcClient client) {
+        return client.getAddress().getHostString().equals(node.getHost()) && client.getAddress().getPort() == node.getPort();
+    }
+}
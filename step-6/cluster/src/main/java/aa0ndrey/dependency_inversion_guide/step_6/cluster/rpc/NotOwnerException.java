@@ -0,0 +1,20 @@
+package aa0ndrey.dependency_inversion_guide.step_6.cluster.rpc;
+
+import aa0ndrey.dependency_inversion_guide.step_6.cluster.membership.ClusterNode;
+import lombok.Getter;
+
+import java.util.List;
+
+//узел получил запрос пользователя, которым он не владеет, например во время переезда партиций;
+//вместе с отказом узел сообщает свой состав кластера, чтобы отправитель мог догнать его или, наоборот, передать свой
+@Getter
+public class NotOwnerException extends RuntimeException {
+    private final List<ClusterNode> nodes;
+    private final long epoch;
+
+    public NotOwnerException(String message, List<ClusterNode> nodes, long epoch) {
+        super(message);
+        this.nodes = nodes;
+        this.epoch = epoch;
+    }
+}
@@ -0,0 +1,172 @@
+package aa0ndrey.dependency_inversion_guide.step_6.cluster.rpc;
+
+import aa0ndrey.dependency_inversion_guide.step_6.cluster.membership.ClusterNode;
+import aa0ndrey.dependency_inversion_guide.step_6.core.codec.BinaryCodec;
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.Order;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+//пул соединений к одному узлу: соединение занимается на время запроса и ответа;
+//в пул возвращается только соединение, ответ из которого прочитан полностью, остальные закрываются
+public class RpcClient implements Closeable {
+    @Getter
+    private final InetSocketAddress address;
+    private final int timeoutMillis;
+    private final ArrayBlockingQueue<Connection> idle;
+    private final Semaphore permits;
+
+    //timeoutMillis ограничивает подключение и ожидание ответа, если у запроса нет более раннего deadline
+    public RpcClient(String host, int port, int maxConnections, int timeoutMillis) {
+        this.address = new InetSocketAddress(host, port);
+        this.timeoutMillis = timeoutMillis;
+        this.idle = new ArrayBlockingQueue<>(maxConnections);
+        this.permits = new Semaphore(maxConnections);
+    }
+
+    public Order createOrder(CreateOrderRequest request, long epoch) {
+        return call(request.getDeadline(), new Request(RpcProtocol.CREATE_ORDER, epoch, request, null)).order;
+    }
+
+    public void updateMembership(List<ClusterNode> nodes, long epoch, Deadline deadline) {
+        call(deadline, new Request(RpcProtocol.UPDATE_MEMBERSHIP, epoch, null, nodes));
+    }
+
+    private Response call(Deadline deadline, Request request) {
+        permits.acquireUninterruptibly();
+        try {
+            deadline.check();
+            var timeout = (int) Math.max(1, Math.min(timeoutMillis, deadline.remaining().toMillis()));
+
+            var connection = idle.poll();
+            Response response;
+            try {
+                if (connection == null) {
+                    connection = new Connection(address, timeout);
+                }
+                response = connection.call(request, timeout);
+            } catch (IOException e) {
+                close(connection);
+                deadline.check();
+                throw new UncheckedIOException(e);
+            } catch (RuntimeException | Error e) {
+                //ошибка декодирования: соединение могло рассинхронизироваться с потоком кадров
+                close(connection);
+                throw e;
+            }
+            idle.add(connection);
+
+            if (response.status == RpcProtocol.OK) {
+                return response;
+            }
+            if (response.status == RpcProtocol.NOT_OWNER) {
+                throw new NotOwnerException(response.message, response.nodes, response.epoch);
+            }
+            throw new RuntimeException(response.message);
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            close(connection);
+        }
+    }
+
+    private static void close(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.socket.close();
+        } catch (IOException e) {
+            //соединение уже не используется
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Request {
+        private final byte type;
+        private final long epoch;
+        private final CreateOrderRequest createOrder;
+        private final List<ClusterNode> nodes;
+    }
+
+    private static class Response {
+        private byte status;
+        private Order order;
+        private String message;
+        private long epoch;
+        private List<ClusterNode> nodes;
+    }
+
+    private static class Connection {
+        private final Socket socket;
+        private final DataInputStream input;
+        private final OutputStream output;
+        private final ByteBuffer buffer = RpcProtocol.allocateBuffer();
+
+        Connection(InetSocketAddress address, int timeoutMillis) throws IOException {
+            this.socket = new Socket();
+            try {
+                socket.connect(address, timeoutMillis);
+                socket.setTcpNoDelay(true);
+                this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                this.output = new BufferedOutputStream(socket.getOutputStream());
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        Response call(Request request, int timeoutMillis) throws IOException {
+            socket.setSoTimeout(timeoutMillis);
+
+            RpcProtocol.beginFrame(buffer);
+            buffer.put(request.type);
+            buffer.putLong(request.epoch);
+            if (request.type == RpcProtocol.CREATE_ORDER) {
+                BinaryCodec.write(buffer, request.createOrder);
+            } else {
+                RpcProtocol.writeNodes(buffer, request.nodes);
+            }
+            RpcProtocol.writeFrame(output, buffer);
+
+            if (!RpcProtocol.readFrame(input, buffer)) {
+                throw new IOException("Узел закрыл соединение до ответа");
+            }
+            var response = new Response();
+            response.status = buffer.get();
+            if (response.status == RpcProtocol.OK) {
+                if (request.type == RpcProtocol.CREATE_ORDER) {
+                    response.order = BinaryCodec.readOrder(buffer);
+                }
+            } else {
+                response.message = BinaryCodec.readString(buffer);
+                if (response.status == RpcProtocol.NOT_OWNER) {
+                    response.epoch = buffer.getLong();
+                    response.nodes = RpcProtocol.readNodes(buffer);
+                }
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package aa0ndrey.dependency_inversion_guide.step_6.cluster.rpc;
+
+import aa0ndrey.dependency_inversion_guide.step_6.cluster.membership.ClusterNode;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.Order;
+
+import java.util.List;
+
+public interface RpcHandler {
+    //epoch - эпоха состава кластера, по которой отправитель выбрал этот узел владельцем
+    Order createOrder(CreateOrderRequest request, long epoch);
+
+    //состав кластера от узла, который обнаружил, что этот узел отстал; более старый состав игнорируется
+    void updateMembership(List<ClusterNode> nodes, long epoch);
+}
@@ -0,0 +1,87 @@
+package aa0ndrey.dependency_inversion_guide.step_6.cluster.rpc;
+
+import aa0ndrey.dependency_inversion_guide.step_6.cluster.membership.ClusterNode;
+import aa0ndrey.dependency_inversion_guide.step_6.core.codec.BinaryCodec;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+//кадр: длина (4), тело; тело запроса: тип (1), эпоха состава отправителя (8), затем
+//для CREATE_ORDER - запрос в формате BinaryCodec, для UPDATE_MEMBERSHIP - узлы состава;
+//тело ответа: статус (1), затем заказ для CREATE_ORDER или ничего для UPDATE_MEMBERSHIP, текст ошибки,
+//для NOT_OWNER дополнительно эпоха (8) и узлы состава ответившего узла;
+//узлы: количество (varint), для каждого id, host, port (varint)
+class RpcProtocol {
+    static final int MAX_FRAME_SIZE = 64 * 1024;
+    //текст ошибки обрезается, чтобы ответ гарантированно поместился в кадр
+    static final int MAX_ERROR_LENGTH = 1024;
+
+    static final byte CREATE_ORDER = 1;
+    static final byte UPDATE_MEMBERSHIP = 2;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+    static final byte NOT_OWNER = 2;
+
+    static ByteBuffer allocateBuffer() {
+        return ByteBuffer.allocate(4 + MAX_FRAME_SIZE);
+    }
+
+    static void beginFrame(ByteBuffer buffer) {
+        buffer.clear();
+        buffer.position(4);
+    }
+
+    static void writeFrame(OutputStream output, ByteBuffer buffer) throws IOException {
+        buffer.putInt(0, buffer.position() - 4);
+        output.write(buffer.array(), 0, buffer.position());
+        output.flush();
+    }
+
+    //после вызова буфер содержит только тело кадра; false, если соединение закрыто между кадрами
+    static boolean readFrame(DataInputStream input, ByteBuffer buffer) throws IOException {
+        int length;
+        try {
+            length = input.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new IOException("Некорректная длина кадра: " + length);
+        }
+        buffer.clear();
+        input.readFully(buffer.array(), 0, length);
+        buffer.limit(length);
+        return true;
+    }
+
+    static void writeNodes(ByteBuffer buffer, List<ClusterNode> nodes) {
+        BinaryCodec.writeVarInt(buffer, nodes.size());
+        for (var node : nodes) {
+            BinaryCodec.writeString(buffer, node.getId());
+            BinaryCodec.writeString(buffer, node.getHost());
+            BinaryCodec.writeVarInt(buffer, node.getPort());
+        }
+    }
+
+    static List<ClusterNode> readNodes(ByteBuffer buffer) {
+        var count = BinaryCodec.readVarInt(buffer);
+        if (count < 0 || count > buffer.remaining()) {
+            throw new IllegalArgumentException("Некорректное количество узлов: " + count);
+        }
+        var nodes = new ArrayList<ClusterNode>(count);
+        for (var i = 0; i < count; i++) {
+            nodes.add(new ClusterNode(BinaryCodec.readString(buffer), BinaryCodec.readString(buffer), BinaryCodec.readVarInt(buffer)));
+        }
+        return nodes;
+    }
+
+    static String truncate(String message) {
+        return message.length() <= MAX_ERROR_LENGTH ? message : message.substring(0, MAX_ERROR_LENGTH);
+    }
+}
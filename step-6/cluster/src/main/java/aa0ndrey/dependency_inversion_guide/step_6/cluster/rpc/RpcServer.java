@@ -0,0 +1,110 @@
+package aa0ndrey.dependency_inversion_guide.step_6.cluster.rpc;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.codec.BinaryCodec;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.Order;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//на каждое входящее соединение выделяется поток, запросы внутри соединения обрабатываются последовательно
+public class RpcServer implements Closeable {
+    private static final System.Logger LOGGER = System.getLogger(RpcServer.class.getName());
+
+    private final ServerSocket serverSocket;
+    private final RpcHandler handler;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        var thread = new Thread(runnable, "rpc-server");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RpcServer(String host, int port, RpcHandler handler) throws IOException {
+        this.serverSocket = new ServerSocket(port, 0, InetAddress.getByName(host));
+        this.handler = handler;
+    }
+
+    //фактический порт, если сервер создан с портом 0
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public void start() {
+        executor.execute(this::acceptLoop);
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                var socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    LOGGER.log(System.Logger.Level.WARNING, "Не удалось принять соединение", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        var buffer = RpcProtocol.allocateBuffer();
+        try (socket) {
+            var input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            var output = new BufferedOutputStream(socket.getOutputStream());
+            while (RpcProtocol.readFrame(input, buffer)) {
+                var type = buffer.get();
+                if (type != RpcProtocol.CREATE_ORDER && type != RpcProtocol.UPDATE_MEMBERSHIP) {
+                    throw new IOException("Неизвестный тип запроса: " + type);
+                }
+                var epoch = buffer.getLong();
+
+                Order order = null;
+                RuntimeException error = null;
+                try {
+                    if (type == RpcProtocol.CREATE_ORDER) {
+                        order = handler.createOrder(BinaryCodec.readCreateOrderRequest(buffer), epoch);
+                    } else {
+                        handler.updateMembership(RpcProtocol.readNodes(buffer), epoch);
+                    }
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+
+                RpcProtocol.beginFrame(buffer);
+                if (error == null) {
+                    buffer.put(RpcProtocol.OK);
+                    if (type == RpcProtocol.CREATE_ORDER) {
+                        BinaryCodec.write(buffer, order);
+                    }
+                } else if (error instanceof NotOwnerException) {
+                    var notOwner = (NotOwnerException) error;
+                    buffer.put(RpcProtocol.NOT_OWNER);
+                    BinaryCodec.writeString(buffer, RpcProtocol.truncate(String.valueOf(error.getMessage())));
+                    buffer.putLong(notOwner.getEpoch());
+                    RpcProtocol.writeNodes(buffer, notOwner.getNodes());
+                } else {
+                    buffer.put(RpcProtocol.ERROR);
+                    BinaryCodec.writeString(buffer, RpcProtocol.truncate(String.valueOf(error.getMessage())));
+                }
+                RpcProtocol.writeFrame(output, buffer);
+            }
+        } catch (IOException | RuntimeException e) {
+            //соединение закрыто клиентом или кадр поврежден, клиент переподключится
+            LOGGER.log(System.Logger.Level.DEBUG, "Соединение RPC закрыто", e);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package aa0ndrey.dependency_inversion_guide.step_6.cluster.order;
+
+import aa0ndrey.dependency_inversion_guide.step_6.cluster.membership.ClusterMembership;
+import aa0ndrey.dependency_inversion_guide.step_6.cluster.membership.ClusterNode;
+import aa0ndrey.dependency_inversion_guide.step_6.cluster.rpc.RpcHandler;
+import aa0ndrey.dependency_inversion_guide.step_6.cluster.rpc.RpcServer;
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderContext;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderObserver;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.Order;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.OrderService;
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//узлы кластера в одном процессе, запросы между ними идут через RpcServer и RpcClient на loopback
+class ClusteredOrderServiceTest {
+    private final List<Node> nodes = new ArrayList<>();
+    private List<ClusterNode> members;
+
+    @BeforeEach
+    void startServers() throws IOException {
+        members = new ArrayList<>();
+        for (var i = 1; i <= 3; i++) {
+            var node = new Node("node-" + i);
+            nodes.add(node);
+            members.add(new ClusterNode(node.id, "127.0.0.1", node.server.getPort()));
+        }
+    }
+
+    @AfterEach
+    void stopServers() throws IOException {
+        for (var node : nodes) {
+            node.server.close();
+        }
+    }
+
+    @Test
+    void requestsAreCreatedByOwner() {
+        startServices(1, 1, 1);
+        var membership = new ClusterMembership(members, 1);
+
+        for (var i = 0; i < 30; i++) {
+            var userId = UUID.randomUUID();
+            var order = create(node(1), userId);
+
+            assertEquals(userId, order.getUserId());
+            assertTrue(node(membership.owner(userId).getId()).created.contains(userId));
+        }
+    }
+
+    @Test
+    void laggingSenderAppliesOwnersMembership() {
+        startServices(1, 1, 1);
+        var previous = new ClusterMembership(members, 1);
+        var current = new ClusterMembership(members.subList(0, 2), 2);
+        node(2).service.getMembership().leave("node-3", 2);
+        node(3).service.getMembership().leave("node-3", 2);
+
+        //по старому составу node-1 пересылает запрос node-3, тот отказывает со своим составом,
+        //и node-1 повторяет запрос новому владельцу node-2
+        var userId = user(it -> previous.owner(it).getId().equals("node-3") && current.owner(it).getId().equals("node-2"));
+        create(node(1), userId);
+
+        assertTrue(node(2).created.contains(userId));
+        assertEquals(2, node(1).service.getMembership().getEpoch());
+        assertEquals(2, node(1).service.getMembership().getNodes().size());
+    }
+
+    @Test
+    void laggingOwnerReceivesSendersMembership() {
+        startServices(2, 1, 1);
+        var membership = new ClusterMembership(members, 2);
+
+        var userId = user(it -> membership.owner(it).getId().equals("node-2"));
+        create(node(1), userId);
+
+        assertTrue(node(2).created.contains(userId));
+        assertEquals(2, node(2).service.getMembership().getEpoch());
+        assertEquals(1, node(3).service.getMembership().getEpoch());
+    }
+
+    @Test
+    void leaveIsBroadcastToAllNodes() {
+        startServices(1, 1, 1);
+
+        node(1).service.leave("node-3", 2);
+
+        for (var node : nodes) {
+            assertEquals(2, node.service.getMembership().getEpoch());
+            assertEquals(2, node.service.getMembership().getNodes().size());
+        }
+        var userId = UUID.randomUUID();
+        create(node(3), userId);
+        assertTrue(node(1).created.contains(userId) || node(2).created.contains(userId));
+    }
+
+    private void startServices(long... epochs) {
+        for (var i = 0; i < nodes.size(); i++) {
+            var node = nodes.get(i);
+            node.service = new ClusteredOrderService(
+                    node.id,
+                    new ClusterMembership(members, epochs[i]),
+                    new OrderService(List.of(new RecordingObserver(node.created))),
+                    2,
+                    1_000
+            );
+        }
+    }
+
+    private Order create(Node node, UUID userId) {
+        var request = new CreateOrderRequest(userId, UUID.randomUUID(), Deadline.after(Duration.ofSeconds(5)), null);
+        var context = new CreateOrderContext(request);
+        node.service.create(context);
+        return context.getCreatedOrder();
+    }
+
+    private Node node(int index) {
+        return nodes.get(index - 1);
+    }
+
+    private Node node(String id) {
+        return nodes.stream().filter(it -> it.id.equals(id)).findFirst().orElseThrow();
+    }
+
+    private static UUID user(Predicate<UUID> condition) {
+        while (true) {
+            var userId = UUID.randomUUID();
+            if (condition.test(userId)) {
+                return userId;
+            }
+        }
+    }
+
+    //сервер запускается до сервиса, чтобы состав кластера содержал фактические порты
+    private static class Node implements RpcHandler {
+        private final String id;
+        private final RpcServer server;
+        private final Set<UUID> created = ConcurrentHashMap.newKeySet();
+        private volatile ClusteredOrderService service;
+
+        private Node(String id) throws IOException {
+            this.id = id;
+            this.server = new RpcServer("127.0.0.1", 0, this);
+            server.start();
+        }
+
+        @Override
+        public Order createOrder(CreateOrderRequest request, long epoch) {
+            return service.createOrder(request, epoch);
+        }
+
+        @Override
+        public void updateMembership(List<ClusterNode> nodes, long epoch) {
+            service.updateMembership(nodes, epoch);
+        }
+    }
+
+    private static class RecordingObserver implements CreateOrderObserver {
+        private final Set<UUID> created;
+
+        private RecordingObserver(Set<UUID> created) {
+            this.created = created;
+        }
+
+        @Override
+        public void onStart(CreateOrderContext context) {
+            var request = context.getRequest();
+            context.setUser(new User(request.getUserId(), "user", 100));
+            context.setProduct(new Product(request.getProductId(), "product", 1));
+        }
+
+        @Override
+        public void onEnd(CreateOrderContext context) {
+            created.add(context.getRequest().getUserId());
+        }
+    }
+}
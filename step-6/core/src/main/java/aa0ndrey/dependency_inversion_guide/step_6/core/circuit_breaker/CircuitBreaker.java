@@ -0,0 +1,85 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.circuit_breaker;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+//решение об открытии принимается по каждым windowSize вызовам, после openNanos пропускается один пробный вызов
+public class CircuitBreaker {
+    private static final Status CLOSED = new Status(CircuitBreakerState.CLOSED, 0);
+    private static final Status HALF_OPEN = new Status(CircuitBreakerState.HALF_OPEN, 0);
+    private static final long CALL = 1L << 32;
+    private static final long FAILURES = CALL - 1;
+
+    private final int windowSize;
+    private final double failureRateThreshold;
+    private final long openNanos;
+
+    //состояние и время открытия меняются одним CAS, иначе проигравший CAS мог бы сдвинуть время чужого открытия
+    private final AtomicReference<Status> status = new AtomicReference<>(CLOSED);
+    //число вызовов окна в старших 32 битах, число ошибок в младших: окно сбрасывается тем же CAS, которым считается вызов
+    private final AtomicLong window = new AtomicLong();
+
+    public CircuitBreaker(int windowSize, double failureRateThreshold, long openNanos) {
+        this.windowSize = windowSize;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openNanos;
+    }
+
+    public boolean allowRequest() {
+        var current = status.get();
+        if (current == CLOSED) {
+            return true;
+        }
+        return current.state == CircuitBreakerState.OPEN
+                && System.nanoTime() - current.openedAtNanos >= openNanos
+                && status.compareAndSet(current, HALF_OPEN);
+    }
+
+    public void record(boolean failed) {
+        var current = status.get();
+        if (current == HALF_OPEN) {
+            if (failed) {
+                status.compareAndSet(HALF_OPEN, new Status(CircuitBreakerState.OPEN, System.nanoTime()));
+            } else if (status.compareAndSet(HALF_OPEN, CLOSED)) {
+                window.set(0);
+            }
+            return;
+        }
+        if (current != CLOSED) {
+            return;
+        }
+
+        long previous;
+        long next;
+        do {
+            previous = window.get();
+            next = previous + CALL + (failed ? 1 : 0);
+            if (next >>> 32 >= windowSize) {
+                next = 0;
+            }
+        } while (!window.compareAndSet(previous, next));
+
+        //итог окна видит только поток, который его сбросил
+        if (next == 0) {
+            var called = (previous >>> 32) + 1;
+            var failedCalls = (previous & FAILURES) + (failed ? 1 : 0);
+            if (failedCalls >= failureRateThreshold * called) {
+                status.compareAndSet(CLOSED, new Status(CircuitBreakerState.OPEN, System.nanoTime()));
+            }
+        }
+    }
+
+    public CircuitBreakerState getState() {
+        return status.get().state;
+    }
+
+    private static class Status {
+        private final CircuitBreakerState state;
+        private final long openedAtNanos;
+
+        private Status(CircuitBreakerState state, long openedAtNanos) {
+            this.state = state;
+            this.openedAtNanos = openedAtNanos;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.circuit_breaker;
+
+public enum CircuitBreakerState {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+}
@@ -0,0 +1,238 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.codec;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.Order;
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+//каждое сообщение начинается с байта версии схемы, UUID пишется как два long,
+//int - как varint с zigzag, строки - длина в байтах и UTF-8 без промежуточного массива при записи
+//запись всегда идет в версии VERSION, а чтение принимает любую версию от MIN_VERSION до VERSION:
+//поле, добавленное в версии N, дописывается в конец сообщения и читается только при version >= N,
+//иначе подставляется значение по умолчанию; удалять и переставлять поля нельзя;
+//версия 2: оставшееся время deadline в микросекундах (varlong) вместо миллисекунд (varint)
+public class BinaryCodec {
+    public static final byte VERSION = 2;
+    public static final byte MIN_VERSION = 1;
+
+    private static final int HAS_IDEMPOTENCY_KEY = 1;
+    private static final int HAS_DEADLINE = 1 << 1;
+
+    public static void write(ByteBuffer buffer, User user) {
+        buffer.put(VERSION);
+        writeUuid(buffer, user.getId());
+        writeString(buffer, user.getName());
+        writeVarInt(buffer, user.getBalance());
+    }
+
+    public static User readUser(ByteBuffer buffer) {
+        readVersion(buffer);
+        return new User(readUuid(buffer), readString(buffer), readVarInt(buffer));
+    }
+
+    public static void write(ByteBuffer buffer, Product product) {
+        buffer.put(VERSION);
+        writeUuid(buffer, product.getId());
+        writeString(buffer, product.getTitle());
+        writeVarInt(buffer, product.getPrice());
+    }
+
+    public static Product readProduct(ByteBuffer buffer) {
+        readVersion(buffer);
+        return new Product(readUuid(buffer), readString(buffer), readVarInt(buffer));
+    }
+
+    public static void write(ByteBuffer buffer, Order order) {
+        buffer.put(VERSION);
+        writeUuid(buffer, order.getId());
+        writeUuid(buffer, order.getUserId());
+        writeUuid(buffer, order.getProductId());
+        buffer.put((byte) (order.getIdempotencyKey() != null ? HAS_IDEMPOTENCY_KEY : 0));
+        if (order.getIdempotencyKey() != null) {
+            writeUuid(buffer, order.getIdempotencyKey());
+        }
+        writeVarInt(buffer, order.getQuantity());
+    }
+
+    public static Order readOrder(ByteBuffer buffer) {
+        readVersion(buffer);
+        var id = readUuid(buffer);
+        var userId = readUuid(buffer);
+        var productId = readUuid(buffer);
+        var idempotencyKey = (buffer.get() & HAS_IDEMPOTENCY_KEY) != 0 ? readUuid(buffer) : null;
+        return new Order(id, userId, productId, idempotencyKey, readVarInt(buffer));
+    }
+
+    //deadline передается как оставшееся время, так как System.nanoTime не сравним между процессами;
+    //время округляется вверх до микросекунды: усечение до миллисекунд превращало остаток меньше 1 мс в истекший срок
+    //и на каждом переходе между узлами отнимало у запроса до миллисекунды
+    public static void write(ByteBuffer buffer, CreateOrderRequest request) {
+        buffer.put(VERSION);
+        writeUuid(buffer, request.getUserId());
+        writeUuid(buffer, request.getProductId());
+        var hasIdempotencyKey = request.getIdempotencyKey() != null;
+        var hasDeadline = !request.getDeadline().isNever();
+        buffer.put((byte) ((hasIdempotencyKey ? HAS_IDEMPOTENCY_KEY : 0) | (hasDeadline ? HAS_DEADLINE : 0)));
+        if (hasIdempotencyKey) {
+            writeUuid(buffer, request.getIdempotencyKey());
+        }
+        if (hasDeadline) {
+            writeVarLong(buffer, (request.getDeadline().remaining().toNanos() + 999) / 1000);
+        }
+    }
+
+    public static CreateOrderRequest readCreateOrderRequest(ByteBuffer buffer) {
+        var version = readVersion(buffer);
+        var userId = readUuid(buffer);
+        var productId = readUuid(buffer);
+        var flags = buffer.get();
+        var idempotencyKey = (flags & HAS_IDEMPOTENCY_KEY) != 0 ? readUuid(buffer) : null;
+        var deadline = (flags & HAS_DEADLINE) != 0 ? Deadline.after(readRemaining(buffer, version)) : Deadline.NEVER;
+        return new CreateOrderRequest(userId, productId, deadline, idempotencyKey);
+    }
+
+    private static Duration readRemaining(ByteBuffer buffer, byte version) {
+        return version >= 2 ? Duration.of(readVarLong(buffer), ChronoUnit.MICROS) : Duration.ofMillis(readVarInt(buffer));
+    }
+
+    public static void writeUuid(ByteBuffer buffer, UUID uuid) {
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+    }
+
+    public static UUID readUuid(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    public static void writeVarInt(ByteBuffer buffer, int value) {
+        var zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7F) != 0) {
+            buffer.put((byte) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        buffer.put((byte) zigzag);
+    }
+
+    public static int readVarInt(ByteBuffer buffer) {
+        var zigzag = 0;
+        for (var shift = 0; shift < 35; shift += 7) {
+            var b = buffer.get();
+            zigzag |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IllegalArgumentException("Некорректное значение varint");
+    }
+
+    public static void writeVarLong(ByteBuffer buffer, long value) {
+        var zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            buffer.put((byte) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        buffer.put((byte) zigzag);
+    }
+
+    public static long readVarLong(ByteBuffer buffer) {
+        var zigzag = 0L;
+        for (var shift = 0; shift < 70; shift += 7) {
+            var b = buffer.get();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IllegalArgumentException("Некорректное значение varint");
+    }
+
+    //null записывается как длина -1
+    public static void writeString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            writeVarInt(buffer, -1);
+            return;
+        }
+        writeVarInt(buffer, utf8Length(value));
+        for (var i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (isSurrogatePair(value, i)) {
+                var codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    public static String readString(ByteBuffer buffer) {
+        var length = readVarInt(buffer);
+        if (length == -1) {
+            return null;
+        }
+        //длина проверяется до выделения массива, иначе поврежденное сообщение могло бы запросить гигабайты
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Некорректная длина строки: " + length + ", в буфере " + buffer.remaining());
+        }
+        if (buffer.hasArray()) {
+            var value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+        var bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int utf8Length(String value) {
+        var length = 0;
+        for (var i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (isSurrogatePair(value, i)) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    //одиночный суррогат не кодируется в UTF-8, поэтому, как и String.getBytes, заменяется на '?'
+    private static boolean isSurrogatePair(String value, int i) {
+        return Character.isHighSurrogate(value.charAt(i)) && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1));
+    }
+
+    private static byte readVersion(ByteBuffer buffer) {
+        var version = buffer.get();
+        if (version < MIN_VERSION || version > VERSION) {
+            throw new IllegalArgumentException("Неподдерживаемая версия формата: " + version);
+        }
+        return version;
+    }
+}
@@ -0,0 +1,27 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.concurrency_limiter;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderContext;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.OrderService;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@RequiredArgsConstructor
+public class ConcurrencyLimitedOrderService {
+    private final OrderService orderService;
+    @Getter
+    private final ConcurrencyLimiter limiter;
+
+    public void create(CreateOrderContext context) throws InterruptedException {
+        limiter.acquire(context.getRequest().getDeadline());
+
+        //задержка create включает вызовы репозиториев и TransactionManagerImpl из наблюдателей
+        var start = System.nanoTime();
+        var succeeded = false;
+        try {
+            orderService.create(context);
+            succeeded = true;
+        } finally {
+            limiter.release(System.nanoTime() - start, succeeded);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.concurrency_limiter;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+//AIMD: при задержке ниже порога лимит растет на 1 / limit, при превышении порога умножается на backoffRatio
+//не чаще одного раза за RTT: запросы, начатые до последнего уменьшения, видели ту же перегрузку и лимит больше не уменьшают;
+//быстрая ошибка не подтверждает, что сервис справляется, поэтому лимит не увеличивает, а медленная уменьшает как перегрузка
+public class ConcurrencyLimiter {
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+    private final int maxQueueSize;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private long lastDecreaseNanos = System.nanoTime() - Long.MAX_VALUE / 2;
+
+    public ConcurrencyLimiter(
+            int initialLimit,
+            int minLimit,
+            int maxLimit,
+            double backoffRatio,
+            long latencyThresholdNanos,
+            int maxQueueSize,
+            long maxWaitNanos
+    ) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.maxQueueSize = maxQueueSize;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+
+    public void acquire() throws InterruptedException {
+        acquire(Deadline.NEVER);
+    }
+
+    //ожидание в очереди ограничено и maxWaitNanos, и сроком запроса: место, полученное после срока, никому не нужно
+    public void acquire(Deadline deadline) throws InterruptedException {
+        deadline.check();
+        lock.lock();
+        try {
+            if (queued == 0 && inFlight < (int) limit) {
+                inFlight++;
+                return;
+            }
+            if (queued >= maxQueueSize) {
+                throw new RuntimeException("Превышен лимит одновременных запросов");
+            }
+
+            queued++;
+            try {
+                var deadlineNanos = deadline.remaining().toNanos();
+                var expiredByDeadline = deadlineNanos < maxWaitNanos;
+                var remainingNanos = Math.min(maxWaitNanos, deadlineNanos);
+                while (inFlight >= (int) limit) {
+                    if (remainingNanos <= 0) {
+                        throw new RuntimeException(
+                                expiredByDeadline ? "Истек срок выполнения запроса" : "Превышено время ожидания в очереди"
+                        );
+                    }
+                    remainingNanos = released.awaitNanos(remainingNanos);
+                }
+            } finally {
+                queued--;
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release(long latencyNanos) {
+        release(latencyNanos, true);
+    }
+
+    public void release(long latencyNanos, boolean succeeded) {
+        var now = System.nanoTime();
+        lock.lock();
+        try {
+            inFlight--;
+            if (latencyNanos > latencyThresholdNanos) {
+                if (now - latencyNanos - lastDecreaseNanos >= 0) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecreaseNanos = now;
+                }
+            } else if (succeeded && inFlight + 1 >= (int) limit) {
+                //увеличивать лимит имеет смысл только если он действительно был исчерпан
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
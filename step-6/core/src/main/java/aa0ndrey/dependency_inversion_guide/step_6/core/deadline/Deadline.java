@@ -0,0 +1,48 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.deadline;
+
+import lombok.Data;
+
+import java.time.Duration;
+
+@Data
+public class Deadline {
+    public static final Deadline NEVER = new Deadline(Long.MAX_VALUE);
+
+    //значение System.nanoTime, после которого результат запроса уже никому не нужен
+    private final long expiresAtNanos;
+
+    //слишком большой таймаут насыщается до NEVER, иначе сложение переполнилось бы в уже истекший срок
+    public static Deadline after(Duration timeout) {
+        if (timeout.isNegative()) {
+            return new Deadline(System.nanoTime());
+        }
+        if (timeout.compareTo(Duration.ofNanos(Long.MAX_VALUE)) >= 0) {
+            return NEVER;
+        }
+        var now = System.nanoTime();
+        var expiresAtNanos = now + timeout.toNanos();
+        return expiresAtNanos < now || expiresAtNanos == Long.MAX_VALUE ? NEVER : new Deadline(expiresAtNanos);
+    }
+
+    //сравнивается значение, а не ссылка, так как срок может быть создан заново, например при десериализации
+    public boolean isNever() {
+        return expiresAtNanos == Long.MAX_VALUE;
+    }
+
+    public Duration remaining() {
+        if (isNever()) {
+            return Duration.ofNanos(Long.MAX_VALUE);
+        }
+        return Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return !isNever() && expiresAtNanos - System.nanoTime() <= 0;
+    }
+
+    public void check() {
+        if (isExpired()) {
+            throw new RuntimeException("Истек срок выполнения запроса");
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.flow;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.Order;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+//ошибка одного запроса не завершает поток, поэтому она передается как результат
+@Data
+@AllArgsConstructor
+public class CreateOrderResult {
+    private CreateOrderRequest request;
+    private Order order;
+    private Throwable error;
+}
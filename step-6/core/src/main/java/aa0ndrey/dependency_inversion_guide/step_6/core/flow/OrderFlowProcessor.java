@@ -0,0 +1,211 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.flow;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.OrderService;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+//у источника запрашивается столько запросов, сколько освободилось мест из concurrency;
+//место освобождается только после выдачи результата подписчику, поэтому в памяти не больше concurrency запросов,
+//даже если подписчик не успевает забирать результаты
+public class OrderFlowProcessor implements Flow.Processor<CreateOrderRequest, CreateOrderResult> {
+    private final OrderService orderService;
+    private final Executor executor;
+    private final int concurrency;
+    private final OutputOrdering ordering;
+
+    //в режиме ORDERED - все принятые запросы в порядке поступления, в режиме UNORDERED - только готовые
+    private final Queue<Slot> slots = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong demand = new AtomicLong();
+    //выдача сигналов подписчику сериализуется: drain выполняет тот поток, который увеличил счетчик с нуля
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super CreateOrderResult> downstream;
+    private volatile boolean upstreamDone;
+    private volatile Throwable upstreamError;
+    private volatile boolean cancelled;
+    private volatile IllegalArgumentException invalidRequest;
+    private boolean terminated;
+
+    public OrderFlowProcessor(OrderService orderService, Executor executor, int concurrency, OutputOrdering ordering) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("Параллелизм должен быть положительным");
+        }
+        this.orderService = orderService;
+        this.executor = executor;
+        this.concurrency = concurrency;
+        this.ordering = ordering;
+    }
+
+    @Override
+    public synchronized void subscribe(Flow.Subscriber<? super CreateOrderResult> subscriber) {
+        if (downstream != null) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Процессор поддерживает только одного подписчика"));
+            return;
+        }
+        downstream = subscriber;
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    invalidRequest = new IllegalArgumentException("Запрошено неположительное количество элементов: " + n);
+                    cancelUpstream();
+                    drain();
+                    return;
+                }
+                demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                cancelUpstream();
+            }
+        });
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        if (cancelled || invalidRequest != null) {
+            subscription.cancel();
+            return;
+        }
+        subscription.request(concurrency);
+    }
+
+    //onNext не бросает исключений: отказ исполнителя становится результатом запроса, а место освобождается как обычно
+    @Override
+    public void onNext(CreateOrderRequest request) {
+        var slot = new Slot();
+        outstanding.incrementAndGet();
+        if (ordering == OutputOrdering.ORDERED) {
+            slots.add(slot);
+        }
+        try {
+            executor.execute(() -> process(request, slot));
+        } catch (RuntimeException e) {
+            complete(slot, new CreateOrderResult(request, null, e));
+        }
+    }
+
+    private void process(CreateOrderRequest request, Slot slot) {
+        CreateOrderResult result;
+        try {
+            result = new CreateOrderResult(request, orderService.create(request), null);
+        } catch (Throwable e) {
+            //без результата слот остался бы незаполненным, и в режиме ORDERED выдача остановилась бы навсегда
+            result = new CreateOrderResult(request, null, e);
+        }
+        complete(slot, result);
+    }
+
+    private void complete(Slot slot, CreateOrderResult result) {
+        slot.result = result;
+        if (ordering == OutputOrdering.UNORDERED) {
+            slots.add(slot);
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        upstreamError = throwable;
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        var missed = 1;
+        do {
+            var subscriber = downstream;
+            if (subscriber != null && !terminated) {
+                emit(subscriber);
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void emit(Flow.Subscriber<? super CreateOrderResult> subscriber) {
+        if (invalidRequest != null) {
+            terminated = true;
+            slots.clear();
+            subscriber.onError(invalidRequest);
+            return;
+        }
+
+        var emitted = 0;
+        while (!cancelled && demand.get() > 0) {
+            var slot = slots.peek();
+            if (slot == null || slot.result == null) {
+                break;
+            }
+            slots.poll();
+            outstanding.decrementAndGet();
+            demand.decrementAndGet();
+            subscriber.onNext(slot.result);
+            emitted++;
+        }
+        if (cancelled) {
+            slots.clear();
+            return;
+        }
+
+        //проверка outstanding после upstreamDone: все onNext источника уже учтены
+        if (upstreamDone && outstanding.get() == 0) {
+            terminated = true;
+            var error = upstreamError;
+            if (error != null) {
+                subscriber.onError(error);
+            } else {
+                subscriber.onComplete();
+            }
+            return;
+        }
+        if (emitted > 0 && !upstreamDone) {
+            upstream.request(emitted);
+        }
+    }
+
+    private void cancelUpstream() {
+        var subscription = upstream;
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    private static class Slot {
+        private volatile CreateOrderResult result;
+    }
+}
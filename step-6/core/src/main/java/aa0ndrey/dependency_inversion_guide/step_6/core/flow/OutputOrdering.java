@@ -0,0 +1,8 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.flow;
+
+public enum OutputOrdering {
+    //результаты выдаются в порядке запросов, медленный запрос задерживает выдачу следующих
+    ORDERED,
+    //результаты выдаются по мере готовности
+    UNORDERED
+}
@@ -0,0 +1,104 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.idempotency;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.Order;
+import lombok.Data;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class IdempotencyTable {
+    private final ConcurrentHashMap<UUID, Entry> entries = new ConcurrentHashMap<>();
+    //ключи в порядке добавления, при одинаковом ttl это и есть порядок истечения;
+    //удаленные и замененные записи остаются в очереди до вытеснения и учитываются в size, поэтому очередь ограничена;
+    //незавершенные записи не вытесняются, поэтому size может превышать maxSize на число выполняющихся запросов
+    private final ConcurrentLinkedQueue<Entry> evictionQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    //голову очереди извлекает только один поток, поэтому peek и poll видят одну и ту же запись
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final int maxSize;
+    private final long ttlNanos;
+
+    public IdempotencyTable(int maxSize, long ttlNanos) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlNanos;
+    }
+
+    //возвращает результат уже начатого запроса с тем же ключом или null, если запрос с этим ключом первый;
+    //ключ привязан к пользователю и товару первого запроса, запрос с тем же ключом и другими данными отклоняется
+    public CompletableFuture<Order> putIfAbsent(CreateOrderRequest request, CompletableFuture<Order> result) {
+        var now = System.nanoTime();
+        evict(now);
+
+        var key = request.getIdempotencyKey();
+        var entry = new Entry(key, request.getUserId(), request.getProductId(), result, now + ttlNanos);
+        var existing = entries.putIfAbsent(key, entry);
+        if (existing != null) {
+            //запрос, который еще выполняется, не истекает: иначе его повтор создал бы второй заказ
+            if (existing.getExpiresAtNanos() - now > 0 || !existing.getResult().isDone()) {
+                if (!existing.matches(request)) {
+                    throw new IllegalArgumentException("Ключ идемпотентности " + key + " уже использован для другого запроса");
+                }
+                return existing.getResult();
+            }
+            if (!entries.replace(key, existing, entry)) {
+                return putIfAbsent(request, result);
+            }
+        }
+        size.incrementAndGet();
+        evictionQueue.add(entry);
+        return null;
+    }
+
+    public void remove(UUID key, CompletableFuture<Order> result) {
+        var entry = entries.get(key);
+        if (entry != null && entry.getResult() == result) {
+            entries.remove(key, entry);
+        }
+    }
+
+    //если вытеснением уже занят другой поток, запрос его не ждет, и размер может ненадолго превысить maxSize;
+    //незавершенная запись из головы очереди переносится в хвост, чтобы не мешать вытеснению следующих за ней,
+    //за один вызов просматривается не больше size записей
+    private void evict(long now) {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            Entry oldest;
+            for (var remaining = size.get(); remaining > 0 && (oldest = evictionQueue.peek()) != null; remaining--) {
+                var current = entries.get(oldest.getKey()) == oldest;
+                var done = oldest.getResult().isDone();
+                if (current && !done && (oldest.getExpiresAtNanos() - now <= 0 || size.get() >= maxSize)) {
+                    evictionQueue.add(evictionQueue.poll());
+                    continue;
+                }
+                if (current && oldest.getExpiresAtNanos() - now > 0 && size.get() < maxSize) {
+                    return;
+                }
+                evictionQueue.poll();
+                size.decrementAndGet();
+                entries.remove(oldest.getKey(), oldest);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Data
+    private static class Entry {
+        private final UUID key;
+        private final UUID userId;
+        private final UUID productId;
+        private final CompletableFuture<Order> result;
+        private final long expiresAtNanos;
+
+        private boolean matches(CreateOrderRequest request) {
+            return userId.equals(request.getUserId()) && productId.equals(request.getProductId());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.idempotency;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderContext;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.Order;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.OrderService;
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+@RequiredArgsConstructor
+public class IdempotentOrderService {
+    private final OrderService orderService;
+    private final IdempotencyTable table;
+
+    public void create(CreateOrderContext context) {
+        var request = context.getRequest();
+        var key = request.getIdempotencyKey();
+        if (key == null) {
+            orderService.create(context);
+            return;
+        }
+
+        var result = new CompletableFuture<Order>();
+        var existing = table.putIfAbsent(request, result);
+        if (existing != null) {
+            //повтор не обращается к репозиториям и получает заказ, созданный первым запросом
+            context.setCreatedOrder(await(existing, request.getDeadline()));
+            return;
+        }
+
+        try {
+            orderService.create(context);
+            result.complete(context.getCreatedOrder());
+        } catch (Throwable e) {
+            //неуспешный запрос можно повторить, а ожидающие повторы должны получить ошибку даже при Error
+            table.remove(key, result);
+            result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    //повтор ждет первый запрос не дольше своего срока, первый запрос может быть медленнее
+    private static Order await(CompletableFuture<Order> existing, Deadline deadline) {
+        try {
+            if (deadline.isNever()) {
+                return existing.get();
+            }
+            return existing.get(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Истек срок выполнения запроса");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.order;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+public class CartItem {
+    private UUID productId;
+    private int quantity;
+}
@@ -0,0 +1,90 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.order;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class CartOrderService {
+    private final List<CreateCartOrderObserver> observers;
+
+    public void create(CreateCartOrderContext context) {
+        var request = context.getRequest();
+        request.getDeadline().check();
+        //проверки, не требующие данных из хранилища, выполняются до начала транзакции
+        if (request.getItems() == null || request.getItems().isEmpty()) {
+            throw new RuntimeException("Корзина пуста");
+        }
+        for (var item : request.getItems()) {
+            if (item.getQuantity() <= 0) {
+                throw new RuntimeException("Некорректное количество товара");
+            }
+        }
+
+        for (var i = 0; i < observers.size(); i++) {
+            try {
+                observers.get(i).onStart(context);
+            } catch (Throwable e) {
+                abort(context, 0, i + 1, e);
+                throw e;
+            }
+        }
+
+        try {
+            process(context);
+        } catch (Throwable e) {
+            abort(context, 0, observers.size(), e);
+            throw e;
+        }
+
+        for (var i = 0; i < observers.size(); i++) {
+            try {
+                observers.get(i).onEnd(context);
+            } catch (Throwable e) {
+                //наблюдатели до i уже завершили onEnd, откатывать нужно только этот и следующие
+                abort(context, i, observers.size(), e);
+                throw e;
+            }
+        }
+    }
+
+    private void process(CreateCartOrderContext context) {
+        var request = context.getRequest();
+        var user = context.getUser();
+        var products = context.getProducts();
+
+        var total = 0L;
+        for (var item : request.getItems()) {
+            var product = products.get(item.getProductId());
+            if (product == null) {
+                throw new RuntimeException("Товар не найден");
+            }
+            total += (long) product.getPrice() * item.getQuantity();
+        }
+
+        //баланс проверяется один раз на всю корзину
+        if (user.getBalance() < total) {
+            throw new RuntimeException("Недостаточно средств");
+        }
+
+        var orders = new ArrayList<Order>(request.getItems().size());
+        for (var item : request.getItems()) {
+            orders.add(new Order(OrderIdGenerator.next(), user.getId(), item.getProductId(), null, item.getQuantity()));
+        }
+        context.setCreatedOrders(orders);
+    }
+
+    //ошибка отката не должна скрыть исходную, поэтому она добавляется к ней как подавленная
+    private void abort(CreateCartOrderContext context, int from, int to, Throwable error) {
+        for (var i = from; i < to; i++) {
+            try {
+                observers.get(i).onError(context, error);
+            } catch (Throwable e) {
+                if (e != error) {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.order;
+
+//ключ данных наблюдателя в CreateOrderContext: сравнивается по ссылке, поэтому ключи разных наблюдателей
+//не пересекаются даже при одинаковых именах, а тип значения проверяется при компиляции
+public final class ContextKey<T> {
+    private final String name;
+
+    public ContextKey(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
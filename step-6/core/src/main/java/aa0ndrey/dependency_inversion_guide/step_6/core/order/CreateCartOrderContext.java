@@ -0,0 +1,45 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.order;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+public class CreateCartOrderContext {
+    private CreateCartOrderRequest request;
+    private User user;
+    private Map<UUID, Product> products;
+    private List<Order> createdOrders;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Map<ContextKey<?>, Object> data;
+
+    public CreateCartOrderContext(CreateCartOrderRequest request) {
+        this(request, null, null, null, new HashMap<>());
+    }
+
+    public <T> void put(ContextKey<T> key, T value) {
+        data.put(key, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(ContextKey<T> key) {
+        return (T) data.get(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T remove(ContextKey<T> key) {
+        return (T) data.remove(key);
+    }
+}
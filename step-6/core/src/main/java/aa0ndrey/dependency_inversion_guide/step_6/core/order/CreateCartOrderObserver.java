@@ -0,0 +1,12 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.order;
+
+public interface CreateCartOrderObserver {
+    void onStart(CreateCartOrderContext context);
+
+    void onEnd(CreateCartOrderContext context);
+
+    //вызывается вместо onEnd или после неудачного onEnd, если у наблюдателя вызывался onStart, а заказы не созданы,
+    //чтобы освободить захваченное в onStart, например откатить транзакцию
+    default void onError(CreateCartOrderContext context, Throwable error) {
+    }
+}
@@ -0,0 +1,20 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.order;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+public class CreateCartOrderRequest {
+    private UUID userId;
+    private List<CartItem> items;
+    private Deadline deadline;
+
+    public CreateCartOrderRequest(UUID userId, List<CartItem> items) {
+        this(userId, items, Deadline.NEVER);
+    }
+}
@@ -2,14 +2,62 @@ package aa0ndrey.dependency_inversion_guide.step_6.core.order;
 
 import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
 import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.HashMap;
+import java.util.Map;
 
 @Data
-@AllArgsConstructor
 public class CreateOrderContext {
     private CreateOrderRequest request;
+    private Order createdOrder;
+
     private User user;
     private Product product;
-    private Order createdOrder;
+
+    //данные наблюдателей, которые должны пережить переход onStart и onEnd на разные потоки
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Map<ContextKey<?>, Object> data;
+
+    public CreateOrderContext(CreateOrderRequest request) {
+        this.request = request;
+        this.data = new HashMap<>();
+    }
+
+    public <T> void put(ContextKey<T> key, T value) {
+        data.put(key, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(ContextKey<T> key) {
+        return (T) data.get(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T remove(ContextKey<T> key) {
+        return (T) data.remove(key);
+    }
+
+    public void clearData() {
+        data.clear();
+    }
+
+    //OrderService нужны только баланс и цена, идентификаторы берутся из запроса
+    public int getUserBalance() {
+        if (user == null) {
+            throw new IllegalStateException("Пользователь не загружен");
+        }
+        return user.getBalance();
+    }
+
+    public int getProductPrice() {
+        if (product == null) {
+            throw new IllegalStateException("Товар не загружен");
+        }
+        return product.getPrice();
+    }
 }
@@ -0,0 +1,89 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.order;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+//контекст возвращается в пул после onEnd, поэтому наблюдатели не должны сохранять ссылку на него;
+//пул убирает только выделение контекста и его словаря, заказ и его id по-прежнему создаются на каждый вызов
+public class CreateOrderContextPool {
+    private final int maxPerThread;
+    //0 - утечки не отслеживаются, иначе отслеживается в среднем каждый N-й возвращенный контекст
+    private final int leakSamplingInterval;
+    //локальный кеш есть только у потоков, которые берут контексты из пула
+    private final ThreadLocal<ArrayDeque<CreateOrderContext>> contexts = new ThreadLocal<>();
+    //контексты, возвращенные другими потоками, например этапом END в StagedOrderService
+    private final ArrayBlockingQueue<CreateOrderContext> shared;
+    private final ReferenceQueue<CreateOrderContext> collected = new ReferenceQueue<>();
+    private final Set<Reference<CreateOrderContext>> released = ConcurrentHashMap.newKeySet();
+
+    public CreateOrderContextPool(int maxPerThread, int leakSamplingInterval) {
+        this(maxPerThread, maxPerThread * Runtime.getRuntime().availableProcessors(), leakSamplingInterval);
+    }
+
+    public CreateOrderContextPool(int maxPerThread, int maxShared, int leakSamplingInterval) {
+        if (leakSamplingInterval < 0) {
+            throw new IllegalArgumentException("Интервал отслеживания утечек не может быть отрицательным: " + leakSamplingInterval);
+        }
+        this.maxPerThread = maxPerThread;
+        this.shared = new ArrayBlockingQueue<>(Math.max(1, maxShared));
+        this.leakSamplingInterval = leakSamplingInterval;
+    }
+
+    public CreateOrderContext acquire(CreateOrderRequest request) {
+        var pooled = contexts.get();
+        if (pooled == null) {
+            pooled = new ArrayDeque<>();
+            contexts.set(pooled);
+        }
+        var context = pooled.pollFirst();
+        if (context == null) {
+            context = shared.poll();
+        }
+        if (context == null) {
+            return new CreateOrderContext(request);
+        }
+        context.setRequest(request);
+        return context;
+    }
+
+    public void release(CreateOrderContext context) {
+        if (context.getRequest() == null) {
+            throw new IllegalStateException("Контекст уже возвращен в пул");
+        }
+        context.setRequest(null);
+        context.setUser(null);
+        context.setProduct(null);
+        context.setCreatedOrder(null);
+        context.clearData();
+
+        //отслеживаемый контекст не переиспользуется, а остается под слабой ссылкой;
+        //остальные контексты переиспользуются, поэтому пул с отслеживанием утечек по-прежнему экономит выделения
+        if (leakSamplingInterval > 0 && ThreadLocalRandom.current().nextInt(leakSamplingInterval) == 0) {
+            released.add(new WeakReference<>(context, collected));
+            return;
+        }
+
+        //поток, который сам не берет контексты, отдает их через общую очередь, иначе они копились бы у него без пользы
+        var pooled = contexts.get();
+        if (pooled != null && pooled.size() < maxPerThread) {
+            pooled.addFirst(context);
+            return;
+        }
+        shared.offer(context);
+    }
+
+    //количество отслеживаемых контекстов, которые пережили сборку мусора, то есть удерживаются кем-то еще
+    public int countRetained() {
+        Reference<? extends CreateOrderContext> reference;
+        while ((reference = collected.poll()) != null) {
+            released.remove(reference);
+        }
+        return released.size();
+    }
+}
@@ -1,7 +1,22 @@
 package aa0ndrey.dependency_inversion_guide.step_6.core.order;
 
+import java.util.List;
+
 public interface CreateOrderObserver {
+    //вызывается StagedOrderService один раз на пачку заказов, которую этап onStart обрабатывает за один проход,
+    //чтобы наблюдатель выполнил I/O для всей пачки одним запросом и положил результат в контексты;
+    //вызов необязательный: OrderService.create его не делает, а ошибка в нем не прерывает пачку,
+    //поэтому onStart должен сам выполнить запрос, если данных в контексте нет
+    default void prefetch(List<CreateOrderContext> contexts) {
+    }
+
     void onStart(CreateOrderContext context);
 
     void onEnd(CreateOrderContext context);
+
+    //вызывается вместо onEnd или после неудачного onEnd, если у наблюдателя вызывался onStart, а заказ не создан
+    //или упал собственный вызов наблюдателя, чтобы освободить захваченное в onStart, например откатить транзакцию;
+    //onStart мог завершиться ошибкой на середине, поэтому данные в контексте могут быть записаны не все
+    default void onError(CreateOrderContext context, Throwable error) {
+    }
 }
@@ -0,0 +1,113 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.order;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.circuit_breaker.CircuitBreaker;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+//чтение - одно volatile чтение неизменяемого массива, изменения копируют массив под блокировкой
+public class CreateOrderObserverRegistry {
+    //пропущенные за вызов наблюдатели хранятся в битовой маске типа long
+    private static final int MAX_OBSERVERS = Long.SIZE;
+    private static final RegisteredObserver[] EMPTY = new RegisteredObserver[0];
+
+    private final List<RegisteredObserver> registrations = new ArrayList<>();
+    //наблюдатель -> критичный наблюдатель, после onEnd которого он должен вызываться
+    private final Map<CreateOrderObserver, CreateOrderObserver> predecessors = new IdentityHashMap<>();
+    private volatile RegisteredObserver[] snapshot = EMPTY;
+
+    public CreateOrderObserverRegistry(List<CreateOrderObserver> observers) {
+        observers.forEach(this::register);
+    }
+
+    //массив нельзя изменять, он общий для всех вызовов
+    public RegisteredObserver[] snapshot() {
+        return snapshot;
+    }
+
+    //все зарегистрированные наблюдатели, включая выключенные, для чтения метрик
+    public synchronized List<RegisteredObserver> getRegistrations() {
+        return List.copyOf(registrations);
+    }
+
+    public void register(CreateOrderObserver observer) {
+        register(new RegisteredObserver(observer, true, Long.MAX_VALUE, null));
+    }
+
+    public void register(CreateOrderObserver observer, long latencyBudgetNanos, CircuitBreaker circuitBreaker) {
+        register(new RegisteredObserver(observer, false, latencyBudgetNanos, circuitBreaker));
+    }
+
+    //OrderService не вызывает onError у наблюдателей, уже завершивших onEnd, поэтому наблюдатель, который нельзя
+    //откатить, регистрируется после критичного predecessor: его onEnd вызывается, только если onEnd predecessor
+    //завершился успешно; пока predecessor выключен, удален или зарегистрирован заново позже него, наблюдатель не вызывается
+    public synchronized void registerAfter(CreateOrderObserver observer, CreateOrderObserver predecessor) {
+        if (findCritical(predecessor) == null) {
+            throw new IllegalArgumentException("Предшествующий наблюдатель должен быть зарегистрирован как критичный");
+        }
+        predecessors.put(observer, predecessor);
+        try {
+            register(observer);
+        } catch (RuntimeException e) {
+            predecessors.remove(observer);
+            throw e;
+        }
+    }
+
+    private synchronized void register(RegisteredObserver registration) {
+        if (registrations.size() == MAX_OBSERVERS) {
+            throw new IllegalStateException("Превышено количество наблюдателей");
+        }
+        registrations.add(registration);
+        publish();
+    }
+
+    public synchronized void unregister(CreateOrderObserver observer) {
+        registrations.removeIf(registration -> registration.getObserver() == observer);
+        predecessors.remove(observer);
+        publish();
+    }
+
+    public synchronized void setEnabled(CreateOrderObserver observer, boolean enabled) {
+        for (var registration : registrations) {
+            if (registration.getObserver() == observer) {
+                registration.enabled = enabled;
+            }
+        }
+        publish();
+    }
+
+    private RegisteredObserver findCritical(CreateOrderObserver observer) {
+        for (var registration : registrations) {
+            if (registration.getObserver() == observer && registration.isCritical()) {
+                return registration;
+            }
+        }
+        return null;
+    }
+
+    private void publish() {
+        var enabled = new ArrayList<RegisteredObserver>(registrations.size());
+        for (var registration : registrations) {
+            if (registration.enabled && hasPublishedPredecessor(registration, enabled)) {
+                enabled.add(registration);
+            }
+        }
+        snapshot = enabled.toArray(EMPTY);
+    }
+
+    private boolean hasPublishedPredecessor(RegisteredObserver registration, List<RegisteredObserver> published) {
+        var predecessor = predecessors.get(registration.getObserver());
+        if (predecessor == null) {
+            return true;
+        }
+        for (var candidate : published) {
+            if (candidate.getObserver() == predecessor && candidate.isCritical()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
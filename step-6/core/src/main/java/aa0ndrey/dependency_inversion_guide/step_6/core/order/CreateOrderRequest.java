@@ -1,5 +1,6 @@
 package aa0ndrey.dependency_inversion_guide.step_6.core.order;
 
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
@@ -10,4 +11,11 @@ import java.util.UUID;
 public class CreateOrderRequest {
     private UUID userId;
     private UUID productId;
+    private Deadline deadline;
+    //ключ, по которому повторы одного и того же запроса не создают новых заказов, null если повторы не ожидаются
+    private UUID idempotencyKey;
+
+    public CreateOrderRequest(UUID userId, UUID productId) {
+        this(userId, productId, Deadline.NEVER, null);
+    }
 }
@@ -11,4 +11,14 @@ public class Order {
     private UUID id;
     private UUID userId;
     private UUID productId;
+    private UUID idempotencyKey;
+    private int quantity;
+
+    public Order(UUID id, UUID userId, UUID productId) {
+        this(id, userId, productId, null);
+    }
+
+    public Order(UUID id, UUID userId, UUID productId, UUID idempotencyKey) {
+        this(id, userId, productId, idempotencyKey, 1);
+    }
 }
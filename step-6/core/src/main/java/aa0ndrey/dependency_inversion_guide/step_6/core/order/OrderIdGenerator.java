@@ -0,0 +1,28 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.order;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.UUID;
+
+//UUID версии 7: старшие 48 бит - время в миллисекундах, поэтому id заказов упорядочены по времени создания;
+//случайные 74 бита берутся из SecureRandom, чтобы по одному id нельзя было предсказать соседние;
+//new SecureRandom() на Linux - это NativePRNG, все экземпляры которого делят одно синхронизированное состояние,
+//поэтому у каждого потока свой DRBG, у которого состояние и блокировка свои
+public class OrderIdGenerator {
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(OrderIdGenerator::newRandom);
+
+    public static UUID next() {
+        var random = RANDOM.get();
+        var msb = (System.currentTimeMillis() << 16) | 0x7000L | (random.nextInt() & 0x0FFFL);
+        var lsb = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(msb, lsb);
+    }
+
+    private static SecureRandom newRandom() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Алгоритм DRBG недоступен", e);
+        }
+    }
+}
@@ -1,27 +1,170 @@
 package aa0ndrey.dependency_inversion_guide.step_6.core.order;
 
-import lombok.RequiredArgsConstructor;
+import lombok.AllArgsConstructor;
 
 import java.util.List;
-import java.util.UUID;
 
-@RequiredArgsConstructor
+@AllArgsConstructor
 public class OrderService {
-    private final List<CreateOrderObserver> observers;
+    private final CreateOrderObserverRegistry observers;
+    //null, если контексты не переиспользуются
+    private final CreateOrderContextPool contextPool;
+
+    public OrderService(List<CreateOrderObserver> observers) {
+        this(new CreateOrderObserverRegistry(observers));
+    }
+
+    public OrderService(CreateOrderObserverRegistry observers) {
+        this(observers, null);
+    }
+
+    //контекст берется из пула и возвращается в него после onEnd, наружу отдается только созданный заказ
+    public Order create(CreateOrderRequest request) {
+        var context = acquireContext(request);
+        try {
+            create(context);
+            return context.getCreatedOrder();
+        } finally {
+            releaseContext(context);
+        }
+    }
 
     public void create(CreateOrderContext context) {
-        observers.forEach(observer -> observer.onStart(context));
+        context.getRequest().getDeadline().check();
+        //onStart и onEnd вызываются у одного и того же набора наблюдателей, даже если он изменился во время вызова
+        var snapshot = observers.snapshot();
+        var skipped = start(context, snapshot);
+        try {
+            process(context);
+        } catch (Throwable e) {
+            abort(context, snapshot, skipped, snapshot.length, e);
+            throw e;
+        }
+        end(context, snapshot, skipped);
+    }
+
+    CreateOrderContext acquireContext(CreateOrderRequest request) {
+        return contextPool != null ? contextPool.acquire(request) : new CreateOrderContext(request);
+    }
+
+    void releaseContext(CreateOrderContext context) {
+        if (contextPool != null) {
+            contextPool.release(context);
+        }
+    }
+
+    RegisteredObserver[] snapshot() {
+        return observers.snapshot();
+    }
+
+    //этапы create по отдельности используются в StagedOrderService
+    //обход по индексу без лямбд, чтобы обход наблюдателей не создавал объектов;
+    //сам вызов create выделяет память под заказ, его UUID и внутренние буферы SecureRandom в OrderIdGenerator
+    //возвращает битовую маску наблюдателей, у которых не нужно вызывать onEnd
+    long start(CreateOrderContext context, RegisteredObserver[] snapshot) {
+        var skipped = 0L;
+        for (var i = 0; i < snapshot.length; i++) {
+            var registration = snapshot[i];
+            if (!registration.allowRequest()) {
+                skipped |= 1L << i;
+                continue;
+            }
 
-        var user = context.getUser();
-        var product = context.getProduct();
+            if (registration.isCritical()) {
+                try {
+                    registration.getObserver().onStart(context);
+                } catch (Throwable e) {
+                    abort(context, snapshot, skipped, i + 1, e);
+                    throw e;
+                }
+                continue;
+            }
+
+            var start = System.nanoTime();
+            var call = registration.begin(start);
+            try {
+                registration.getObserver().onStart(context);
+                registration.record(call, System.nanoTime() - start, false);
+            } catch (Throwable e) {
+                registration.record(call, System.nanoTime() - start, true);
+                //Error не считается сбоем одного наблюдателя и прерывает создание так же, как сбой критичного
+                if (!(e instanceof RuntimeException)) {
+                    abort(context, snapshot, skipped, i + 1, e);
+                    throw e;
+                }
+                skipped |= 1L << i;
+                onError(registration, context, e);
+            }
+        }
+        return skipped;
+    }
 
-        if (user.getBalance() < product.getPrice()) {
+    void process(CreateOrderContext context) {
+        if (context.getUserBalance() < context.getProductPrice()) {
             throw new RuntimeException("Недостаточно средств");
         }
 
-        var order = new Order(UUID.randomUUID(), user.getId(), product.getId());
+        var request = context.getRequest();
+        var order = new Order(
+                OrderIdGenerator.next(),
+                request.getUserId(),
+                request.getProductId(),
+                request.getIdempotencyKey()
+        );
         context.setCreatedOrder(order);
+    }
+
+    void end(CreateOrderContext context, RegisteredObserver[] snapshot, long skipped) {
+        for (var i = 0; i < snapshot.length; i++) {
+            if ((skipped & (1L << i)) != 0) {
+                continue;
+            }
+
+            var registration = snapshot[i];
+            if (registration.isCritical()) {
+                try {
+                    registration.getObserver().onEnd(context);
+                } catch (Throwable e) {
+                    abort(context, snapshot, skipped | ((1L << i) - 1), snapshot.length, e);
+                    throw e;
+                }
+                continue;
+            }
 
-        observers.forEach(observer -> observer.onEnd(context));
+            var start = System.nanoTime();
+            var call = registration.begin(start);
+            try {
+                registration.getObserver().onEnd(context);
+                registration.record(call, System.nanoTime() - start, false);
+            } catch (Throwable e) {
+                registration.record(call, System.nanoTime() - start, true);
+                //наблюдатели до i уже завершили onEnd, откатывать нужно только этот и следующие
+                if (!(e instanceof RuntimeException)) {
+                    abort(context, snapshot, skipped | ((1L << i) - 1), snapshot.length, e);
+                    throw e;
+                }
+                onError(registration, context, e);
+            }
+        }
+    }
+
+    //onError вызывается у наблюдателей из первых count, у которых вызывался onStart и которые не пропущены
+    void abort(CreateOrderContext context, RegisteredObserver[] snapshot, long skipped, int count, Throwable error) {
+        for (var i = 0; i < count; i++) {
+            if ((skipped & (1L << i)) == 0) {
+                onError(snapshot[i], context, error);
+            }
+        }
+    }
+
+    //ошибка отката не должна скрыть исходную, поэтому она добавляется к ней как подавленная
+    private static void onError(RegisteredObserver registration, CreateOrderContext context, Throwable error) {
+        try {
+            registration.getObserver().onError(context, error);
+        } catch (Throwable e) {
+            if (e != error) {
+                error.addSuppressed(e);
+            }
+        }
     }
 }
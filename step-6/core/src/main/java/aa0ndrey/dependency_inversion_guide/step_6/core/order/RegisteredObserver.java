@@ -0,0 +1,109 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.order;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.circuit_breaker.CircuitBreaker;
+import aa0ndrey.dependency_inversion_guide.step_6.core.circuit_breaker.CircuitBreakerState;
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+//некритичный наблюдатель, превышающий бюджет задержки или падающий с ошибкой, отключается автоматическим выключателем;
+//критичный наблюдатель не отключается, поэтому время его вызовов не измеряется и метрики по нему не собираются
+public class RegisteredObserver {
+    //число одновременных вызовов, превышение бюджета которыми замечается до их завершения
+    private static final int WATCHED_CALLS = 16;
+    private static final long FREE = Long.MIN_VALUE;
+    private static final long REPORTED = Long.MIN_VALUE + 1;
+
+    @Getter
+    private final CreateOrderObserver observer;
+    @Getter
+    private final boolean critical;
+    @Getter
+    private final long latencyBudgetNanos;
+    private final CircuitBreaker circuitBreaker;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder totalTimeNanos = new LongAdder();
+    //время начала выполняющихся вызовов, FREE - свободная ячейка, REPORTED - превышение бюджета уже учтено выключателем
+    private final AtomicLongArray callStarts = new AtomicLongArray(WATCHED_CALLS);
+    boolean enabled = true;
+
+    public RegisteredObserver(CreateOrderObserver observer, boolean critical, long latencyBudgetNanos, CircuitBreaker circuitBreaker) {
+        if (!critical && circuitBreaker == null) {
+            throw new IllegalArgumentException("Для некритичного наблюдателя нужен автоматический выключатель");
+        }
+        for (var i = 0; i < WATCHED_CALLS; i++) {
+            callStarts.set(i, FREE);
+        }
+        this.observer = observer;
+        this.critical = critical;
+        this.latencyBudgetNanos = latencyBudgetNanos;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    //зависший вызов учитывается выключателем как ошибка, как только превысит бюджет, а не после своего завершения,
+    //иначе выключатель не открылся бы, пока все вызовы висят
+    boolean allowRequest() {
+        if (critical) {
+            return true;
+        }
+        var now = System.nanoTime();
+        for (var i = 0; i < WATCHED_CALLS; i++) {
+            var start = callStarts.get(i);
+            if (start != FREE && start != REPORTED && now - start > latencyBudgetNanos
+                    && callStarts.compareAndSet(i, start, REPORTED)) {
+                circuitBreaker.record(true);
+            }
+        }
+        if (circuitBreaker.allowRequest()) {
+            return true;
+        }
+        skipped.increment();
+        return false;
+    }
+
+    //возвращает ячейку вызова для record или -1, если все ячейки заняты и вызов отслеживается только по завершении
+    int begin(long startNanos) {
+        for (var i = 0; i < WATCHED_CALLS; i++) {
+            if (callStarts.compareAndSet(i, FREE, startNanos)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    void record(int call, long elapsedNanos, boolean failed) {
+        var reported = call >= 0 && callStarts.getAndSet(call, FREE) == REPORTED;
+        calls.increment();
+        totalTimeNanos.add(elapsedNanos);
+        var overBudget = elapsedNanos > latencyBudgetNanos;
+        if (failed || overBudget) {
+            failures.increment();
+        }
+        if (!reported) {
+            circuitBreaker.record(failed || overBudget);
+        }
+    }
+
+    public CircuitBreakerState getCircuitBreakerState() {
+        return critical ? CircuitBreakerState.CLOSED : circuitBreaker.getState();
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    public long getTotalTimeNanos() {
+        return totalTimeNanos.sum();
+    }
+}
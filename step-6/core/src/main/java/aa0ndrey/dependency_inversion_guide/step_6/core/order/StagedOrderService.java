@@ -0,0 +1,234 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.order;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.ring_buffer.Sequence;
+import aa0ndrey.dependency_inversion_guide.step_6.core.ring_buffer.WaitStrategy;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+//create разбит на этапы onStart, проверка баланса и onEnd, каждый этап обрабатывается своим потоком
+//пачками из общего кольцевого буфера, поэтому наблюдатели не должны использовать ThreadLocal между onStart и onEnd
+public class StagedOrderService {
+    private static final System.Logger LOGGER = System.getLogger(StagedOrderService.class.getName());
+    private static final Duration DEFAULT_STOP_TIMEOUT = Duration.ofSeconds(10);
+    private static final int START = 0;
+    private static final int PROCESS = 1;
+    private static final int END = 2;
+
+    private final OrderService orderService;
+    private final Slot[] slots;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final ThreadFactory threadFactory;
+    private final Sequence cursor = new Sequence(-1);
+    private final Sequence[] stages = {new Sequence(-1), new Sequence(-1), new Sequence(-1)};
+    private final List<Thread> threads = new ArrayList<>();
+    private boolean started;
+    private volatile boolean stopped;
+
+    public StagedOrderService(OrderService orderService, int bufferSize, WaitStrategy waitStrategy, ThreadFactory threadFactory) {
+        if (Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("Размер буфера должен быть степенью двойки");
+        }
+        this.orderService = orderService;
+        this.slots = new Slot[bufferSize];
+        for (var i = 0; i < bufferSize; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = bufferSize - 1;
+        this.waitStrategy = waitStrategy;
+        this.threadFactory = threadFactory;
+    }
+
+    //последовательности этапов не сбрасываются, поэтому остановленный сервис повторно не запускается
+    public synchronized void start() {
+        if (started || stopped) {
+            throw new IllegalStateException("Сервис уже запускался");
+        }
+        started = true;
+        threads.add(threadFactory.newThread(() -> run(START, cursor)));
+        threads.add(threadFactory.newThread(() -> run(PROCESS, stages[START])));
+        threads.add(threadFactory.newThread(() -> run(END, stages[PROCESS])));
+        threads.forEach(Thread::start);
+    }
+
+    //заказы, которые этап END не успел завершить, завершаются ошибкой, а у начатых вызывается onError наблюдателей
+    public void stop() {
+        stop(DEFAULT_STOP_TIMEOUT);
+    }
+
+    //наблюдатель может не реагировать на прерывание, поэтому ожидание потоков этапов ограничено timeout
+    public void stop(Duration timeout) {
+        stopped = true;
+        synchronized (this) {
+            stopAndFail(timeout);
+        }
+    }
+
+    private void stopAndFail(Duration timeout) {
+        var deadlineNanos = System.nanoTime() + timeout.toNanos();
+        threads.forEach(Thread::interrupt);
+        var alive = false;
+        for (var thread : threads) {
+            try {
+                //join(0) ждал бы бесконечно
+                thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            alive |= thread.isAlive();
+        }
+
+        var error = new IllegalStateException("Сервис остановлен");
+        if (alive) {
+            //контексты еще могут использоваться зависшим потоком, поэтому откат и возврат в пул не выполняются,
+            //а ожидающие результата только получают ошибку
+            LOGGER.log(System.Logger.Level.WARNING, "Потоки этапов не остановились за " + timeout);
+            for (var sequence = stages[END].get() + 1; sequence <= cursor.get(); sequence++) {
+                var result = slots[(int) sequence & mask].result;
+                if (result != null) {
+                    result.completeExceptionally(error);
+                }
+            }
+            return;
+        }
+        threads.clear();
+
+        for (var sequence = stages[END].get() + 1; sequence <= cursor.get(); sequence++) {
+            var slot = slots[(int) sequence & mask];
+            if (slot.error == null && sequence <= stages[START].get()) {
+                orderService.abort(slot.context, slot.observers, slot.skipped, slot.observers.length, error);
+            }
+            complete(slot, slot.error != null ? slot.error : error);
+        }
+        stages[END].set(cursor.get());
+    }
+
+    //контекст берется из пула OrderService и возвращается в него потоком этапа END
+    public CompletableFuture<Order> submit(CreateOrderRequest request) {
+        request.getDeadline().check();
+        return submit(orderService.acquireContext(request), true);
+    }
+
+    public CompletableFuture<Order> submit(CreateOrderContext context) {
+        context.getRequest().getDeadline().check();
+        return submit(context, false);
+    }
+
+    //место в буфере ожидается вне монитора, чтобы ожидающий производитель не блокировал остальных и stop
+    private CompletableFuture<Order> submit(CreateOrderContext context, boolean pooled) {
+        while (true) {
+            if (stopped) {
+                if (pooled) {
+                    orderService.releaseContext(context);
+                }
+                throw new IllegalStateException("Сервис остановлен");
+            }
+            if (cursor.get() + 1 - slots.length > stages[END].get()) {
+                LockSupport.parkNanos(1_000);
+                continue;
+            }
+            synchronized (this) {
+                var next = cursor.get() + 1;
+                if (stopped || next - slots.length > stages[END].get()) {
+                    continue;
+                }
+                var slot = slots[(int) next & mask];
+                slot.context = context;
+                slot.pooled = pooled;
+                slot.observers = orderService.snapshot();
+                slot.result = new CompletableFuture<>();
+                slot.error = null;
+                var result = slot.result;
+                cursor.set(next);
+                return result;
+            }
+        }
+    }
+
+    private void run(int stage, Sequence dependency) {
+        var own = stages[stage];
+        var next = own.get() + 1;
+        while (!Thread.currentThread().isInterrupted()) {
+            var available = waitStrategy.waitFor(next, dependency);
+            if (stage == START && available >= next) {
+                prefetch(next, available);
+            }
+            for (var sequence = next; sequence <= available; sequence++) {
+                handle(stage, slots[(int) sequence & mask]);
+            }
+            if (available >= next) {
+                own.set(available);
+                next = available + 1;
+            }
+        }
+    }
+
+    //I/O этапа onStart выполняется наблюдателями одним запросом на всю пачку, см. CreateOrderObserver.prefetch
+    private void prefetch(long from, long to) {
+        var contexts = new ArrayList<CreateOrderContext>((int) (to - from + 1));
+        for (var sequence = from; sequence <= to; sequence++) {
+            contexts.add(slots[(int) sequence & mask].context);
+        }
+        for (var registration : orderService.snapshot()) {
+            try {
+                registration.getObserver().prefetch(contexts);
+            } catch (Throwable e) {
+                LOGGER.log(System.Logger.Level.WARNING, "Ошибка предварительной загрузки пачки заказов", e);
+            }
+        }
+    }
+
+    private void handle(int stage, Slot slot) {
+        if (slot.error == null) {
+            try {
+                switch (stage) {
+                    case START -> slot.skipped = orderService.start(slot.context, slot.observers);
+                    case PROCESS -> orderService.process(slot.context);
+                    case END -> orderService.end(slot.context, slot.observers, slot.skipped);
+                }
+            } catch (Throwable e) {
+                //start и end сами вызывают onError наблюдателей, после process это делается здесь
+                if (stage == PROCESS) {
+                    orderService.abort(slot.context, slot.observers, slot.skipped, slot.observers.length, e);
+                }
+                //поток этапа не должен завершиться, иначе производители ждали бы освобождения буфера бесконечно
+                slot.error = e;
+            }
+        }
+
+        if (stage == END) {
+            complete(slot, slot.error);
+        }
+    }
+
+    private void complete(Slot slot, Throwable error) {
+        var order = slot.context.getCreatedOrder();
+        if (slot.pooled) {
+            orderService.releaseContext(slot.context);
+        }
+        if (error == null) {
+            slot.result.complete(order);
+        } else {
+            slot.result.completeExceptionally(error);
+        }
+        slot.context = null;
+        slot.observers = null;
+        slot.result = null;
+        slot.error = null;
+    }
+
+    private static class Slot {
+        private CreateOrderContext context;
+        private boolean pooled;
+        private RegisteredObserver[] observers;
+        private long skipped;
+        private CompletableFuture<Order> result;
+        private Throwable error;
+    }
+}
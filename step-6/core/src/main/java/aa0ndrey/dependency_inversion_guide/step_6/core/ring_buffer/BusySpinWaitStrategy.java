@@ -0,0 +1,12 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.ring_buffer;
+
+public class BusySpinWaitStrategy implements WaitStrategy {
+    @Override
+    public long waitFor(long sequence, Sequence dependency) {
+        long available;
+        while ((available = dependency.get()) < sequence && !Thread.currentThread().isInterrupted()) {
+            Thread.onSpinWait();
+        }
+        return available;
+    }
+}
@@ -0,0 +1,19 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.ring_buffer;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.locks.LockSupport;
+
+@RequiredArgsConstructor
+public class ParkingWaitStrategy implements WaitStrategy {
+    private final long parkNanos;
+
+    @Override
+    public long waitFor(long sequence, Sequence dependency) {
+        long available;
+        while ((available = dependency.get()) < sequence && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(parkNanos);
+        }
+        return available;
+    }
+}
@@ -0,0 +1,13 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.ring_buffer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//дополнение до отдельной кеш-линии, чтобы последовательности разных этапов не мешали друг другу
+@SuppressWarnings("unused")
+public class Sequence extends AtomicLong {
+    private long p1, p2, p3, p4, p5, p6, p7;
+
+    public Sequence(long initialValue) {
+        super(initialValue);
+    }
+}
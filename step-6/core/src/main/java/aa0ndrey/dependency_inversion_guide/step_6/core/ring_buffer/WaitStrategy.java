@@ -0,0 +1,6 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.ring_buffer;
+
+public interface WaitStrategy {
+    //возвращает последнюю доступную последовательность, которая меньше sequence только при прерывании потока
+    long waitFor(long sequence, Sequence dependency);
+}
@@ -0,0 +1,20 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.ring_buffer;
+
+public class YieldingWaitStrategy implements WaitStrategy {
+    private static final int SPIN_TRIES = 100;
+
+    @Override
+    public long waitFor(long sequence, Sequence dependency) {
+        var counter = SPIN_TRIES;
+        long available;
+        while ((available = dependency.get()) < sequence && !Thread.currentThread().isInterrupted()) {
+            if (counter > 0) {
+                counter--;
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        return available;
+    }
+}
@@ -0,0 +1,51 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.warm_up;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.OrderService;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.UUID;
+
+//прогрев выполняется до того, как экземпляр сообщает о готовности принимать запросы;
+//прогревается тот же граф OrderService и наблюдателей, что обслуживает запросы, с адаптерами вместо хранилища,
+//иначе JIT собрал бы профиль для других классов и вызовов
+public class OrderServiceWarmUp {
+    private final int batchSize;
+    //сколько пачек подряд время компиляции не должно меняться, чтобы считать прогрев завершенным
+    private final int stableBatches;
+    private final Duration maxDuration;
+
+    public OrderServiceWarmUp(int batchSize, int stableBatches, Duration maxDuration) {
+        this.batchSize = batchSize;
+        this.stableBatches = stableBatches;
+        this.maxDuration = maxDuration;
+    }
+
+    public WarmUpReport run(OrderService orderService) {
+        var compilation = ManagementFactory.getCompilationMXBean();
+        var compilationTimeSupported = compilation != null && compilation.isCompilationTimeMonitoringSupported();
+
+        var start = System.nanoTime();
+        var deadline = start + maxDuration.toNanos();
+        var iterations = 0L;
+        var stable = 0;
+        var lastCompilationTime = -1L;
+        while (stable < stableBatches && System.nanoTime() - deadline < 0) {
+            for (var i = 0; i < batchSize; i++) {
+                orderService.create(new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID()));
+            }
+            iterations += batchSize;
+
+            if (!compilationTimeSupported) {
+                stable++;
+                continue;
+            }
+            var compilationTime = compilation.getTotalCompilationTime();
+            stable = compilationTime == lastCompilationTime ? stable + 1 : 0;
+            lastCompilationTime = compilationTime;
+        }
+
+        return new WarmUpReport(iterations, Duration.ofNanos(System.nanoTime() - start), stable >= stableBatches);
+    }
+}
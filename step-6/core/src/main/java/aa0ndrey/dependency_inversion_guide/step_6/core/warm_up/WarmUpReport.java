@@ -0,0 +1,15 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.warm_up;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Duration;
+
+@Data
+@AllArgsConstructor
+public class WarmUpReport {
+    private long iterations;
+    //время до момента, когда JIT перестал компилировать новые методы
+    private Duration timeToSteadyState;
+    private boolean steady;
+}
@@ -0,0 +1,97 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.circuit_breaker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    @Test
+    void opensWhenFailureRateOfWindowReachesThreshold() {
+        var breaker = new CircuitBreaker(4, 0.5, TimeUnit.HOURS.toNanos(1));
+        breaker.record(true);
+        breaker.record(false);
+        breaker.record(false);
+        breaker.record(false);
+        assertEquals(CircuitBreakerState.CLOSED, breaker.getState());
+
+        breaker.record(true);
+        breaker.record(true);
+        breaker.record(false);
+        assertEquals(CircuitBreakerState.CLOSED, breaker.getState());
+        breaker.record(false);
+        assertEquals(CircuitBreakerState.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    void halfOpenAllowsSingleProbeAndClosesOnSuccess() throws InterruptedException {
+        var breaker = new CircuitBreaker(1, 1, TimeUnit.MILLISECONDS.toNanos(20));
+        breaker.record(true);
+        assertFalse(breaker.allowRequest());
+
+        Thread.sleep(30);
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        assertEquals(CircuitBreakerState.HALF_OPEN, breaker.getState());
+
+        breaker.record(false);
+        assertEquals(CircuitBreakerState.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    void failedProbeReopensWithNewOpenTime() throws InterruptedException {
+        var breaker = new CircuitBreaker(1, 1, TimeUnit.MILLISECONDS.toNanos(50));
+        breaker.record(true);
+        Thread.sleep(60);
+        assertTrue(breaker.allowRequest());
+
+        breaker.record(true);
+        assertEquals(CircuitBreakerState.OPEN, breaker.getState());
+        //время открытия отсчитывается от неудачной пробы, а не от первого открытия
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    void concurrentCallersGetSingleProbe() throws InterruptedException {
+        var breaker = new CircuitBreaker(1, 1, TimeUnit.MILLISECONDS.toNanos(20));
+        var ready = new CountDownLatch(8);
+        var start = new CountDownLatch(1);
+        var allowed = new AtomicInteger();
+        var threads = new ArrayList<Thread>();
+        for (var i = 0; i < 8; i++) {
+            var thread = new Thread(() -> {
+                //каждый поток открывает выключатель заново, побеждает только первое открытие
+                breaker.record(true);
+                ready.countDown();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (breaker.allowRequest()) {
+                    allowed.incrementAndGet();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        ready.await();
+        Thread.sleep(30);
+        start.countDown();
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, allowed.get());
+        assertEquals(CircuitBreakerState.HALF_OPEN, breaker.getState());
+    }
+}
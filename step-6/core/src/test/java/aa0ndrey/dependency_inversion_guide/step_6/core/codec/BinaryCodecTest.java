@@ -0,0 +1,130 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.codec;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.Order;
+import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryCodecTest {
+
+    @Test
+    void roundTripsOrderAndRequest() {
+        var buffer = ByteBuffer.allocate(256);
+        var order = new Order(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), null, 3);
+        var request = new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID(),
+                Deadline.after(Duration.ofSeconds(5)), UUID.randomUUID());
+        BinaryCodec.write(buffer, order);
+        BinaryCodec.write(buffer, request);
+        buffer.flip();
+
+        assertEquals(order, BinaryCodec.readOrder(buffer));
+        var read = BinaryCodec.readCreateOrderRequest(buffer);
+        assertEquals(request.getUserId(), read.getUserId());
+        assertEquals(request.getIdempotencyKey(), read.getIdempotencyKey());
+        assertFalse(read.getDeadline().isNever());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    //срок получателя не раньше срока отправителя и позже него не больше чем на время передачи и микросекунду
+    @Test
+    void deadlineIsRoundedUpNotTruncated() {
+        var buffer = ByteBuffer.allocate(256);
+        var deadline = Deadline.after(Duration.ofNanos(1_999_999));
+        var request = new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID(), deadline, null);
+
+        var start = System.nanoTime();
+        BinaryCodec.write(buffer, request);
+        buffer.flip();
+        var read = BinaryCodec.readCreateOrderRequest(buffer).getDeadline();
+        var elapsed = System.nanoTime() - start;
+
+        assertTrue(read.getExpiresAtNanos() - deadline.getExpiresAtNanos() >= 0);
+        assertTrue(read.getExpiresAtNanos() - deadline.getExpiresAtNanos() <= elapsed + 1_000);
+    }
+
+    @Test
+    void readsDeadlineInMillisecondsFromVersion1() {
+        var buffer = ByteBuffer.allocate(256);
+        buffer.put((byte) 1);
+        BinaryCodec.writeUuid(buffer, UUID.randomUUID());
+        BinaryCodec.writeUuid(buffer, UUID.randomUUID());
+        buffer.put((byte) 2);
+        BinaryCodec.writeVarInt(buffer, 5_000);
+        buffer.flip();
+
+        var remaining = BinaryCodec.readCreateOrderRequest(buffer).getDeadline().remaining();
+
+        assertTrue(remaining.compareTo(Duration.ofSeconds(4)) > 0);
+        assertTrue(remaining.compareTo(Duration.ofSeconds(5)) <= 0);
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void roundTripsVarLong() {
+        var buffer = ByteBuffer.allocate(256);
+        var values = new long[]{0, 1, -1, Integer.MAX_VALUE + 1L, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (var value : values) {
+            BinaryCodec.writeVarLong(buffer, value);
+        }
+        buffer.flip();
+        for (var value : values) {
+            assertEquals(value, BinaryCodec.readVarLong(buffer));
+        }
+    }
+
+    @Test
+    void encodesStringsLikeStringGetBytes() {
+        for (var value : new String[]{"", "order", "заказ", "😀", "a\uD83Db", "\uDE00", "x\uD83D"}) {
+            var buffer = ByteBuffer.allocate(64);
+            BinaryCodec.writeString(buffer, value);
+            buffer.flip();
+            var expected = value.getBytes(StandardCharsets.UTF_8);
+            assertEquals(expected.length, BinaryCodec.readVarInt(buffer));
+            var actual = new byte[buffer.remaining()];
+            buffer.get(actual);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void keepsNullString() {
+        var buffer = ByteBuffer.allocate(64);
+        BinaryCodec.write(buffer, new User(UUID.randomUUID(), null, 7));
+        buffer.flip();
+        var user = BinaryCodec.readUser(buffer);
+        assertNull(user.getName());
+        assertEquals(7, user.getBalance());
+    }
+
+    @Test
+    void rejectsStringLongerThanBuffer() {
+        var buffer = ByteBuffer.allocate(16);
+        BinaryCodec.writeVarInt(buffer, 1_000_000);
+        buffer.put((byte) 'a');
+        buffer.flip();
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.readString(buffer));
+    }
+
+    @Test
+    void rejectsNewerVersion() {
+        var buffer = ByteBuffer.allocate(256);
+        BinaryCodec.write(buffer, new User(UUID.randomUUID(), "user", 1));
+        buffer.put(0, (byte) (BinaryCodec.VERSION + 1));
+        buffer.flip();
+        var error = assertThrows(IllegalArgumentException.class, () -> BinaryCodec.readUser(buffer));
+        assertTrue(error.getMessage().contains(String.valueOf(BinaryCodec.VERSION + 1)));
+    }
+}
@@ -0,0 +1,154 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.concurrency_limiter;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderContext;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderObserver;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.OrderService;
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimiterTest {
+    private static final long THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    void slowCompletionsOfOneRoundTripDecreaseLimitOnce() throws InterruptedException {
+        var limiter = new ConcurrencyLimiter(20, 1, 100, 0.5, THRESHOLD_NANOS, 0, 0);
+        for (var i = 0; i < 10; i++) {
+            limiter.acquire();
+        }
+        Thread.sleep(20);
+
+        //все 10 запросов начались до первого уменьшения и видели одну и ту же перегрузку
+        for (var i = 0; i < 10; i++) {
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(20));
+        }
+        assertEquals(10, limiter.getLimit());
+
+        //запрос, начатый после уменьшения, снова уменьшает лимит
+        limiter.acquire();
+        Thread.sleep(20);
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    void fastFailuresDoNotIncreaseLimit() throws InterruptedException {
+        var limiter = new ConcurrencyLimiter(1, 1, 100, 0.5, THRESHOLD_NANOS, 0, 0);
+        for (var i = 0; i < 10; i++) {
+            limiter.acquire();
+            limiter.release(0, false);
+        }
+        assertEquals(1, limiter.getLimit());
+
+        for (var i = 0; i < 10; i++) {
+            limiter.acquire();
+            limiter.release(0, true);
+        }
+        assertTrue(limiter.getLimit() > 1);
+    }
+
+    @Test
+    void queueWaitEndsAtRequestDeadline() throws InterruptedException {
+        var limiter = new ConcurrencyLimiter(1, 1, 1, 0.5, THRESHOLD_NANOS, 10, TimeUnit.SECONDS.toNanos(10));
+        limiter.acquire();
+
+        var start = System.nanoTime();
+        var error = assertThrows(
+                RuntimeException.class,
+                () -> limiter.acquire(Deadline.after(Duration.ofMillis(50)))
+        );
+
+        assertEquals("Истек срок выполнения запроса", error.getMessage());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(0, limiter.getQueued());
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    //задержка хранилища растет с числом одновременных запросов: без ограничения все 32 потока получили бы ~64 мс,
+    //с ограничением лимит опускается туда, где задержка ниже порога, а лишние запросы быстро отклоняются
+    @Test
+    void limitConvergesUnderOverloadAndExcessRequestsAreRejectedFast() throws InterruptedException {
+        var storageInFlight = new AtomicInteger();
+        var service = new ConcurrencyLimitedOrderService(
+                new OrderService(List.of(new OverloadedStorageObserver(storageInFlight))),
+                new ConcurrencyLimiter(32, 1, 64, 0.7, THRESHOLD_NANOS, 4, TimeUnit.MILLISECONDS.toNanos(20))
+        );
+
+        var completed = new AtomicInteger();
+        var rejected = new AtomicInteger();
+        var maxRejectionNanos = new AtomicLong();
+        var stopAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        var threads = new ArrayList<Thread>();
+        for (var i = 0; i < 32; i++) {
+            var thread = new Thread(() -> {
+                while (System.nanoTime() - stopAt < 0) {
+                    var request = new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID());
+                    var start = System.nanoTime();
+                    try {
+                        service.create(new CreateOrderContext(request));
+                        completed.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        rejected.incrementAndGet();
+                        maxRejectionNanos.accumulateAndGet(System.nanoTime() - start, Math::max);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        var limiter = service.getLimiter();
+        assertTrue(limiter.getLimit() < 16, "limit " + limiter.getLimit());
+        assertTrue(completed.get() > 0);
+        assertTrue(rejected.get() > 0);
+        //отклонение не ждет дольше maxWaitNanos с запасом на планировщик
+        assertTrue(maxRejectionNanos.get() < TimeUnit.MILLISECONDS.toNanos(500), "rejection " + maxRejectionNanos.get());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    private static class OverloadedStorageObserver implements CreateOrderObserver {
+        private final AtomicInteger inFlight;
+
+        OverloadedStorageObserver(AtomicInteger inFlight) {
+            this.inFlight = inFlight;
+        }
+
+        @Override
+        public void onStart(CreateOrderContext context) {
+            var concurrency = inFlight.incrementAndGet();
+            try {
+                Thread.sleep(2L * concurrency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            var request = context.getRequest();
+            context.setUser(new User(request.getUserId(), "user", 100));
+            context.setProduct(new Product(request.getProductId(), "product", 10));
+        }
+
+        @Override
+        public void onEnd(CreateOrderContext context) {
+        }
+    }
+}
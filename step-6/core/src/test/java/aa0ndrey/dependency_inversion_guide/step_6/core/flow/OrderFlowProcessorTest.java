@@ -0,0 +1,222 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.flow;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderContext;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderObserver;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.OrderService;
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderFlowProcessorTest {
+
+    @Test
+    void upstreamIsRequestedOnlyAsResultsAreDelivered() {
+        var processor = new OrderFlowProcessor(orderService(null), Runnable::run, 4, OutputOrdering.ORDERED);
+        var upstream = new RecordingSubscription();
+        var downstream = new RecordingSubscriber();
+        processor.subscribe(downstream);
+        processor.onSubscribe(upstream);
+        assertEquals(4, upstream.requested);
+
+        for (var i = 0; i < 4; i++) {
+            processor.onNext(request());
+        }
+        assertEquals(0, downstream.results.size());
+        assertEquals(4, upstream.requested);
+
+        downstream.subscription.request(2);
+        assertEquals(2, downstream.results.size());
+        assertEquals(6, upstream.requested);
+
+        processor.onComplete();
+        assertFalse(downstream.completed);
+        downstream.subscription.request(10);
+        assertEquals(4, downstream.results.size());
+        assertTrue(downstream.completed);
+        assertEquals(6, upstream.requested);
+    }
+
+    @Test
+    void orderedOutputKeepsInputOrderWhenLaterRequestsFinishFirst() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(8);
+        try {
+            var processor = new OrderFlowProcessor(orderService(context -> {
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }), executor, 16, OutputOrdering.ORDERED);
+            var downstream = new RecordingSubscriber();
+            processor.subscribe(downstream);
+            downstream.subscription.request(Long.MAX_VALUE);
+
+            var requests = new ArrayList<CreateOrderRequest>();
+            try (var publisher = new SubmissionPublisher<CreateOrderRequest>()) {
+                publisher.subscribe(processor);
+                for (var i = 0; i < 500; i++) {
+                    var request = request();
+                    requests.add(request);
+                    publisher.submit(request);
+                }
+            }
+
+            assertTrue(downstream.done.await(10, TimeUnit.SECONDS));
+            assertTrue(downstream.completed);
+            assertEquals(requests.size(), downstream.results.size());
+            for (var i = 0; i < requests.size(); i++) {
+                assertEquals(requests.get(i), downstream.results.get(i).getRequest());
+                assertNotNull(downstream.results.get(i).getOrder());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectedExecutionBecomesErrorResult() {
+        var processor = new OrderFlowProcessor(orderService(null), task -> {
+            throw new RejectedExecutionException();
+        }, 2, OutputOrdering.ORDERED);
+        var upstream = new RecordingSubscription();
+        var downstream = new RecordingSubscriber();
+        processor.subscribe(downstream);
+        processor.onSubscribe(upstream);
+        downstream.subscription.request(Long.MAX_VALUE);
+
+        processor.onNext(request());
+        processor.onComplete();
+
+        assertEquals(1, downstream.results.size());
+        assertNull(downstream.results.get(0).getOrder());
+        assertTrue(downstream.results.get(0).getError() instanceof RejectedExecutionException);
+        assertTrue(downstream.completed);
+    }
+
+    @Test
+    void errorInServiceBecomesErrorResult() {
+        var processor = new OrderFlowProcessor(orderService(context -> {
+            throw new StackOverflowError();
+        }), Runnable::run, 2, OutputOrdering.UNORDERED);
+        var upstream = new RecordingSubscription();
+        var downstream = new RecordingSubscriber();
+        processor.subscribe(downstream);
+        processor.onSubscribe(upstream);
+        downstream.subscription.request(Long.MAX_VALUE);
+
+        processor.onNext(request());
+        processor.onNext(request());
+        processor.onComplete();
+
+        assertEquals(2, downstream.results.size());
+        assertTrue(downstream.results.get(0).getError() instanceof StackOverflowError);
+        assertTrue(downstream.completed);
+        assertEquals(4, upstream.requested);
+    }
+
+    @Test
+    void nonPositiveRequestFailsSubscriberAndCancelsUpstream() {
+        var processor = new OrderFlowProcessor(orderService(null), Runnable::run, 2, OutputOrdering.ORDERED);
+        var upstream = new RecordingSubscription();
+        var downstream = new RecordingSubscriber();
+        processor.subscribe(downstream);
+        processor.onSubscribe(upstream);
+
+        downstream.subscription.request(0);
+
+        assertTrue(downstream.error instanceof IllegalArgumentException);
+        assertTrue(upstream.cancelled.get());
+    }
+
+    private static CreateOrderRequest request() {
+        return new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID());
+    }
+
+    private static OrderService orderService(Consumer<CreateOrderContext> onStart) {
+        return new OrderService(List.of(new CreateOrderObserver() {
+            @Override
+            public void onStart(CreateOrderContext context) {
+                if (onStart != null) {
+                    onStart.accept(context);
+                }
+                var request = context.getRequest();
+                context.setUser(new User(request.getUserId(), "user", 100));
+                context.setProduct(new Product(request.getProductId(), "product", 10));
+            }
+
+            @Override
+            public void onEnd(CreateOrderContext context) {
+            }
+        }));
+    }
+
+    private static class RecordingSubscription implements Flow.Subscription {
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private long requested;
+
+        @Override
+        public void request(long n) {
+            requested += n;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled.set(true);
+        }
+    }
+
+    private static class RecordingSubscriber implements Flow.Subscriber<CreateOrderResult> {
+        private final List<CreateOrderResult> results = new ArrayList<>();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicInteger signals = new AtomicInteger();
+        private Flow.Subscription subscription;
+        private volatile boolean completed;
+        private volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        //сигналы процессора сериализованы, поэтому список без синхронизации; счетчик проверяет отсутствие наложений
+        @Override
+        public void onNext(CreateOrderResult item) {
+            assertEquals(1, signals.incrementAndGet());
+            results.add(item);
+            signals.decrementAndGet();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.idempotency;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderContext;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.Order;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.OrderService;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IdempotentOrderServiceTest {
+
+    @Test
+    void removedKeysDoNotOccupyTable() {
+        var table = new IdempotencyTable(4, TimeUnit.MINUTES.toNanos(1));
+        for (var i = 0; i < 1_000; i++) {
+            var request = request(UUID.randomUUID());
+            var result = new CompletableFuture<Order>();
+            assertNull(table.putIfAbsent(request, result));
+            table.remove(request.getIdempotencyKey(), result);
+        }
+
+        var request = request(UUID.randomUUID());
+        var result = new CompletableFuture<Order>();
+        assertNull(table.putIfAbsent(request, result));
+        assertSame(result, table.putIfAbsent(request, new CompletableFuture<>()));
+    }
+
+    @Test
+    void oldestKeyIsEvictedWhenTableIsFull() {
+        var table = new IdempotencyTable(2, TimeUnit.MINUTES.toNanos(1));
+        var first = request(UUID.randomUUID());
+        table.putIfAbsent(first, completed());
+        table.putIfAbsent(request(UUID.randomUUID()), completed());
+        table.putIfAbsent(request(UUID.randomUUID()), completed());
+
+        assertNull(table.putIfAbsent(first, new CompletableFuture<>()));
+    }
+
+    //вытеснение выполняющегося запроса позволило бы его повтору создать второй заказ
+    @Test
+    void pendingKeyIsNotEvictedWhenTableIsFull() {
+        var table = new IdempotencyTable(2, TimeUnit.MINUTES.toNanos(1));
+        var pending = request(UUID.randomUUID());
+        var result = new CompletableFuture<Order>();
+        table.putIfAbsent(pending, result);
+        var completed = request(UUID.randomUUID());
+        table.putIfAbsent(completed, completed());
+        for (var i = 0; i < 10; i++) {
+            table.putIfAbsent(request(UUID.randomUUID()), completed());
+        }
+
+        assertSame(result, table.putIfAbsent(pending, new CompletableFuture<>()));
+        //завершенные записи за выполняющейся вытесняются как обычно
+        assertNull(table.putIfAbsent(completed, new CompletableFuture<>()));
+    }
+
+    @Test
+    void pendingKeyDoesNotExpire() {
+        var table = new IdempotencyTable(16, 0);
+        var pending = request(UUID.randomUUID());
+        var result = new CompletableFuture<Order>();
+        table.putIfAbsent(pending, result);
+
+        assertSame(result, table.putIfAbsent(pending, new CompletableFuture<>()));
+        result.complete(null);
+        assertNull(table.putIfAbsent(pending, new CompletableFuture<>()));
+    }
+
+    @Test
+    void keyOfAnotherRequestIsRejected() {
+        var key = UUID.randomUUID();
+        var table = new IdempotencyTable(16, TimeUnit.MINUTES.toNanos(1));
+        var first = request(key);
+        table.putIfAbsent(first, completed());
+        var service = new IdempotentOrderService(new OrderService(List.of()), table);
+
+        var anotherProduct = new CreateOrderRequest(first.getUserId(), UUID.randomUUID(), Deadline.NEVER, key);
+        var anotherUser = new CreateOrderRequest(UUID.randomUUID(), first.getProductId(), Deadline.NEVER, key);
+        assertThrows(IllegalArgumentException.class, () -> service.create(new CreateOrderContext(anotherProduct)));
+        assertThrows(IllegalArgumentException.class, () -> service.create(new CreateOrderContext(anotherUser)));
+    }
+
+    @Test
+    void repeatWaitsForFirstRequestNoLongerThanItsDeadline() {
+        var key = UUID.randomUUID();
+        var table = new IdempotencyTable(16, TimeUnit.MINUTES.toNanos(1));
+        var pending = new CompletableFuture<Order>();
+        var first = request(key);
+        table.putIfAbsent(first, pending);
+        var service = new IdempotentOrderService(new OrderService(List.of()), table);
+
+        var request = new CreateOrderRequest(first.getUserId(), first.getProductId(),
+                Deadline.after(Duration.ofMillis(50)), key);
+        var error = assertThrows(RuntimeException.class, () -> service.create(new CreateOrderContext(request)));
+        assertEquals("Истек срок выполнения запроса", error.getMessage());
+    }
+
+    @Test
+    void failedRequestReleasesKey() {
+        var key = UUID.randomUUID();
+        var table = new IdempotencyTable(16, TimeUnit.MINUTES.toNanos(1));
+        var service = new IdempotentOrderService(new OrderService(List.of()), table);
+        var request = new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID(), Deadline.NEVER, key);
+
+        //без наблюдателей пользователь не загружен, и OrderService завершается ошибкой
+        assertThrows(IllegalStateException.class, () -> service.create(new CreateOrderContext(request)));
+        assertNull(table.putIfAbsent(request, new CompletableFuture<>()));
+    }
+
+    @Test
+    void repeatReceivesErrorOfFirstRequest() {
+        var key = UUID.randomUUID();
+        var table = new IdempotencyTable(16, TimeUnit.MINUTES.toNanos(1));
+        var pending = new CompletableFuture<Order>();
+        var request = request(key);
+        table.putIfAbsent(request, pending);
+        pending.completeExceptionally(new StackOverflowError());
+        var service = new IdempotentOrderService(new OrderService(List.of()), table);
+
+        assertThrows(StackOverflowError.class, () -> service.create(new CreateOrderContext(request)));
+    }
+
+    private static CreateOrderRequest request(UUID key) {
+        return new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID(), Deadline.NEVER, key);
+    }
+
+    private static CompletableFuture<Order> completed() {
+        return CompletableFuture.completedFuture(null);
+    }
+}
@@ -0,0 +1,122 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.order;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CartOrderServiceTest {
+    private final UUID productId = UUID.randomUUID();
+
+    @Test
+    void invalidQuantityIsRejectedBeforeTransactionStarts() {
+        var observer = new RecordingObserver(100);
+        var service = new CartOrderService(List.of(observer));
+
+        var error = assertThrows(RuntimeException.class, () -> service.create(context(0)));
+
+        assertEquals("Некорректное количество товара", error.getMessage());
+        assertEquals(List.of(), observer.events);
+    }
+
+    @Test
+    void insufficientBalanceRollsBackEveryStartedObserver() {
+        var first = new RecordingObserver(10);
+        var second = new RecordingObserver(10);
+        var service = new CartOrderService(List.of(first, second));
+
+        var error = assertThrows(RuntimeException.class, () -> service.create(context(2)));
+
+        assertEquals("Недостаточно средств", error.getMessage());
+        assertEquals(List.of("start", "error"), first.events);
+        assertEquals(List.of("start", "error"), second.events);
+    }
+
+    @Test
+    void failedStartRollsBackOnlyStartedObservers() {
+        var first = new RecordingObserver(100);
+        var failing = new RecordingObserver(100) {
+            @Override
+            public void onStart(CreateCartOrderContext context) {
+                super.onStart(context);
+                throw new RuntimeException("start failed");
+            }
+        };
+        var notStarted = new RecordingObserver(100);
+        var service = new CartOrderService(List.of(first, failing, notStarted));
+
+        assertThrows(RuntimeException.class, () -> service.create(context(1)));
+
+        assertEquals(List.of("start", "error"), first.events);
+        assertEquals(List.of("start", "error"), failing.events);
+        assertEquals(List.of(), notStarted.events);
+    }
+
+    @Test
+    void failedEndRollsBackFailedAndFollowingObserversAndKeepsRollbackErrorsSuppressed() {
+        var committed = new RecordingObserver(100);
+        var failure = new RuntimeException("commit failed");
+        var failing = new RecordingObserver(100) {
+            @Override
+            public void onEnd(CreateCartOrderContext context) {
+                throw failure;
+            }
+        };
+        var rollbackFailure = new RuntimeException("rollback failed");
+        var following = new RecordingObserver(100) {
+            @Override
+            public void onError(CreateCartOrderContext context, Throwable error) {
+                super.onError(context, error);
+                throw rollbackFailure;
+            }
+        };
+        var service = new CartOrderService(List.of(committed, failing, following));
+
+        assertSame(failure, assertThrows(RuntimeException.class, () -> service.create(context(1))));
+
+        assertEquals(List.of("start", "end"), committed.events);
+        assertEquals(List.of("start", "error"), failing.events);
+        assertEquals(List.of("start", "error"), following.events);
+        assertSame(rollbackFailure, failure.getSuppressed()[0]);
+    }
+
+    private CreateCartOrderContext context(int quantity) {
+        return new CreateCartOrderContext(
+                new CreateCartOrderRequest(UUID.randomUUID(), List.of(new CartItem(productId, quantity)))
+        );
+    }
+
+    private class RecordingObserver implements CreateCartOrderObserver {
+        private final int balance;
+        final List<String> events = new ArrayList<>();
+
+        RecordingObserver(int balance) {
+            this.balance = balance;
+        }
+
+        @Override
+        public void onStart(CreateCartOrderContext context) {
+            events.add("start");
+            context.setUser(new User(context.getRequest().getUserId(), "user", balance));
+            context.setProducts(Map.of(productId, new Product(productId, "product", 10)));
+        }
+
+        @Override
+        public void onEnd(CreateCartOrderContext context) {
+            events.add("end");
+        }
+
+        @Override
+        public void onError(CreateCartOrderContext context, Throwable error) {
+            events.add("error");
+        }
+    }
+}
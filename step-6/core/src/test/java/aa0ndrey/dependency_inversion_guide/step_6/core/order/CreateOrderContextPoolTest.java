@@ -0,0 +1,121 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.order;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CreateOrderContextPoolTest {
+    private static final int ITERATIONS = 20_000;
+
+    private static volatile Object sink;
+
+    //после прогрева взятие и возврат контекста не выделяют памяти
+    @Test
+    void acquireAndReleaseDoNotAllocate() {
+        var request = new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID());
+        var pool = new CreateOrderContextPool(4, 0);
+
+        var allocated = allocatedPerCall(() -> pool.release(pool.acquire(request)));
+
+        assertEquals(0, allocated);
+    }
+
+    //create с пулом не бесплатен: заказ, его UUID и буферы SecureRandom выделяются на каждый вызов;
+    //сравнение с OrderService без пула ненадежно, так как JIT может убрать не убегающий из create контекст
+    @Test
+    void pooledCreateAllocatesOnlyOrderAndId() {
+        var request = new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID());
+        var service = new OrderService(registry(new FixedObserver()), new CreateOrderContextPool(4, 0));
+
+        var orderOnly = allocatedPerCall(() -> sink = new Order(OrderIdGenerator.next(), request.getUserId(), request.getProductId(), null));
+        var withPool = allocatedPerCall(() -> sink = service.create(request));
+
+        assertTrue(withPool > 0);
+        assertTrue(withPool <= orderOnly + 64, "create выделяет " + withPool + " байт на вызов, заказ с id " + orderOnly);
+    }
+
+    @Test
+    void leakSamplingKeepsReusingUntrackedContexts() {
+        var seen = Collections.newSetFromMap(new IdentityHashMap<CreateOrderContext, Boolean>());
+        var observer = new FixedObserver() {
+            @Override
+            public void onStart(CreateOrderContext context) {
+                seen.add(context);
+                super.onStart(context);
+            }
+        };
+        var pool = new CreateOrderContextPool(4, 4);
+        var service = new OrderService(registry(observer), pool);
+
+        for (var i = 0; i < 1_000; i++) {
+            service.create(new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID()));
+        }
+
+        //отслеживается в среднем каждый четвертый контекст, остальные переиспользуются
+        assertTrue(seen.size() < 500, "создано контекстов: " + seen.size());
+        assertTrue(seen.size() > 1);
+    }
+
+    @Test
+    void retainedContextsAreReported() {
+        var retained = Collections.newSetFromMap(new IdentityHashMap<CreateOrderContext, Boolean>());
+        var observer = new FixedObserver() {
+            @Override
+            public void onEnd(CreateOrderContext context) {
+                retained.add(context);
+            }
+        };
+        var pool = new CreateOrderContextPool(4, 1);
+        var service = new OrderService(registry(observer), pool);
+
+        for (var i = 0; i < 10; i++) {
+            service.create(new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID()));
+        }
+        System.gc();
+
+        assertEquals(10, pool.countRetained());
+        assertEquals(10, retained.size());
+    }
+
+    private static long allocatedPerCall(Runnable call) {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var threadId = Thread.currentThread().getId();
+        for (var i = 0; i < ITERATIONS; i++) {
+            call.run();
+        }
+        var before = threads.getThreadAllocatedBytes(threadId);
+        for (var i = 0; i < ITERATIONS; i++) {
+            call.run();
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - before) / ITERATIONS;
+    }
+
+    private static CreateOrderObserverRegistry registry(CreateOrderObserver observer) {
+        return new CreateOrderObserverRegistry(List.of(observer));
+    }
+
+    //пользователь и товар создаются один раз, чтобы наблюдатель не добавлял своих выделений
+    private static class FixedObserver implements CreateOrderObserver {
+        private final User user = new User(UUID.randomUUID(), "user", 100);
+        private final Product product = new Product(UUID.randomUUID(), "product", 1);
+
+        @Override
+        public void onStart(CreateOrderContext context) {
+            context.setUser(user);
+            context.setProduct(product);
+        }
+
+        @Override
+        public void onEnd(CreateOrderContext context) {
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.order;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.circuit_breaker.CircuitBreaker;
+import aa0ndrey.dependency_inversion_guide.step_6.core.circuit_breaker.CircuitBreakerState;
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegisteredObserverTest {
+
+    @Test
+    void hungCallOpensBreakerBeforeItCompletes() throws Exception {
+        var entered = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var hanging = new NoopObserver() {
+            @Override
+            public void onEnd(CreateOrderContext context) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        var registry = new CreateOrderObserverRegistry(List.of(new LoadingObserver()));
+        registry.register(hanging, TimeUnit.MILLISECONDS.toNanos(10), new CircuitBreaker(1, 1, TimeUnit.HOURS.toNanos(1)));
+        var service = new OrderService(registry);
+
+        var first = CompletableFuture.runAsync(() -> service.create(request()));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        Thread.sleep(30);
+
+        //следующий вызов замечает зависший, выключатель открывается, и зависший наблюдатель пропускается
+        service.create(request());
+        var registration = registry.getRegistrations().get(1);
+        assertEquals(CircuitBreakerState.OPEN, registration.getCircuitBreakerState());
+        assertEquals(1, registration.getSkipped());
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        //onStart и onEnd первого вызова, превышение бюджета в onEnd учтено один раз
+        assertEquals(2, registration.getCalls());
+        assertEquals(1, registration.getFailures());
+    }
+
+    @Test
+    void criticalObserverIsNotTimed() {
+        var registry = new CreateOrderObserverRegistry(List.of(new LoadingObserver()));
+        new OrderService(registry).create(request());
+
+        var registration = registry.getRegistrations().get(0);
+        assertEquals(0, registration.getCalls());
+        assertEquals(0, registration.getTotalTimeNanos());
+    }
+
+    @Test
+    void nonCriticalObserverRequiresBreaker() {
+        var registry = new CreateOrderObserverRegistry(List.of());
+        assertThrows(IllegalArgumentException.class, () -> registry.register(new NoopObserver(), 1, null));
+        assertEquals(List.of(), registry.getRegistrations());
+    }
+
+    private static CreateOrderRequest request() {
+        return new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID());
+    }
+
+    private static class NoopObserver implements CreateOrderObserver {
+        @Override
+        public void onStart(CreateOrderContext context) {
+        }
+
+        @Override
+        public void onEnd(CreateOrderContext context) {
+        }
+    }
+
+    private static class LoadingObserver extends NoopObserver {
+        @Override
+        public void onStart(CreateOrderContext context) {
+            var request = context.getRequest();
+            context.setUser(new User(request.getUserId(), "user", 100));
+            context.setProduct(new Product(request.getProductId(), "product", 10));
+        }
+    }
+}
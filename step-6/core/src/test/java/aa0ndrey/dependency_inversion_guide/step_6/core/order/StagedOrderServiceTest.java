@@ -0,0 +1,263 @@
+package aa0ndrey.dependency_inversion_guide.step_6.core.order;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.core.ring_buffer.ParkingWaitStrategy;
+import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StagedOrderServiceTest {
+    private StagedOrderService service;
+
+    @AfterEach
+    void stop() {
+        if (service != null) {
+            service.stop();
+        }
+    }
+
+    @Test
+    void failedProcessRollsBackAndKeepsStagesRunning() throws Exception {
+        var observer = new RecordingObserver(1);
+        service = new StagedOrderService(new OrderService(List.of(observer)), 4, new ParkingWaitStrategy(1_000), Thread::new);
+        service.start();
+
+        var error = failure(service.submit(request(0)));
+        assertEquals("Недостаточно средств", error.getMessage());
+        assertEquals(1, observer.errors.get());
+        assertEquals(0, observer.ends.get());
+
+        for (var i = 0; i < 16; i++) {
+            assertNotNull(service.submit(request(10)).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(16, observer.ends.get());
+        assertEquals(1, observer.errors.get());
+    }
+
+    @Test
+    void errorInObserverFailsOnlyItsOrder() throws Exception {
+        var started = new RecordingObserver(1);
+        var failing = new RecordingObserver(1) {
+            @Override
+            public void onStart(CreateOrderContext context) {
+                if (context.getRequest().getUserId().getMostSignificantBits() == 0) {
+                    throw new StackOverflowError();
+                }
+                super.onStart(context);
+            }
+        };
+        service = new StagedOrderService(new OrderService(List.of(started, failing)), 4, new ParkingWaitStrategy(1_000), Thread::new);
+        service.start();
+
+        var request = new CreateOrderRequest(new UUID(0, 1), UUID.randomUUID());
+        assertTrue(failure(service.submit(request)) instanceof StackOverflowError);
+        assertEquals(1, started.errors.get());
+        assertEquals(1, failing.errors.get());
+
+        for (var i = 0; i < 8; i++) {
+            assertNotNull(service.submit(request(10)).get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void stopFailsPendingOrders() {
+        var observer = new RecordingObserver(1);
+        service = new StagedOrderService(new OrderService(List.of(observer)), 4, new ParkingWaitStrategy(1_000), Thread::new);
+        var first = service.submit(request(10));
+        var second = service.submit(request(10));
+
+        service.stop();
+
+        assertTrue(failure(first) instanceof IllegalStateException);
+        assertTrue(failure(second) instanceof IllegalStateException);
+        assertEquals(0, observer.errors.get());
+        assertThrows(IllegalStateException.class, () -> service.submit(request(10)));
+    }
+
+    @Test
+    void startStagePrefetchesWholeBatchOnce() throws Exception {
+        var batches = new ArrayList<Integer>();
+        var observer = new RecordingObserver(1) {
+            @Override
+            public void prefetch(List<CreateOrderContext> contexts) {
+                batches.add(contexts.size());
+            }
+        };
+        service = new StagedOrderService(new OrderService(List.of(observer)), 8, new ParkingWaitStrategy(1_000), Thread::new);
+        var results = new ArrayList<CompletableFuture<Order>>();
+        for (var i = 0; i < 8; i++) {
+            results.add(service.submit(request(10)));
+        }
+
+        service.start();
+        for (var result : results) {
+            assertNotNull(result.get(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(List.of(8), batches);
+    }
+
+    @Test
+    void failedPrefetchDoesNotFailOrders() throws Exception {
+        var observer = new RecordingObserver(1) {
+            @Override
+            public void prefetch(List<CreateOrderContext> contexts) {
+                throw new RuntimeException("Сбой");
+            }
+        };
+        service = new StagedOrderService(new OrderService(List.of(observer)), 4, new ParkingWaitStrategy(1_000), Thread::new);
+        service.start();
+
+        assertNotNull(service.submit(request(10)).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void stoppedServiceCannotBeRestarted() {
+        service = new StagedOrderService(new OrderService(List.of(new RecordingObserver(1))), 4, new ParkingWaitStrategy(1_000), Thread::new);
+        service.start();
+        assertThrows(IllegalStateException.class, service::start);
+
+        service.stop();
+        assertThrows(IllegalStateException.class, service::start);
+    }
+
+    @Test
+    void stopReturnsAndFailsPendingOrdersWhenObserverIgnoresInterrupt() throws InterruptedException {
+        var entered = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var observer = new RecordingObserver(1) {
+            @Override
+            public void onStart(CreateOrderContext context) {
+                entered.countDown();
+                var interrupted = false;
+                while (true) {
+                    try {
+                        release.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                //прерывание восстанавливается после выхода из ожидания, чтобы поток этапа смог завершиться
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                super.onStart(context);
+            }
+        };
+        service = new StagedOrderService(new OrderService(List.of(observer)), 4, new ParkingWaitStrategy(1_000), Thread::new);
+        service.start();
+        var stuck = service.submit(request(10));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        var start = System.nanoTime();
+        service.stop(Duration.ofMillis(200));
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertTrue(failure(stuck) instanceof IllegalStateException);
+        release.countDown();
+    }
+
+    @Test
+    void producerWaitingForSpaceDoesNotBlockOtherProducers() throws Exception {
+        var release = new CountDownLatch(1);
+        var observer = new RecordingObserver(1) {
+            @Override
+            public void onEnd(CreateOrderContext context) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.onEnd(context);
+            }
+        };
+        service = new StagedOrderService(new OrderService(List.of(observer)), 1, new ParkingWaitStrategy(1_000), Thread::new);
+        service.start();
+        var first = service.submit(request(10));
+
+        //буфер занят, оба производителя ждут места, и ни один не держит монитор, мешающий stop
+        var waiting = new ArrayList<CompletableFuture<CompletableFuture<Order>>>();
+        for (var i = 0; i < 2; i++) {
+            waiting.add(CompletableFuture.supplyAsync(() -> service.submit(request(10))));
+        }
+        Thread.sleep(50);
+        release.countDown();
+
+        assertNotNull(first.get(5, TimeUnit.SECONDS));
+        for (var result : waiting) {
+            assertNotNull(result.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(3, observer.ends.get());
+    }
+
+    @Test
+    void criticalFailureInOnStartCallsOnErrorOfStartedObservers() {
+        var first = new RecordingObserver(1);
+        var second = new RecordingObserver(1) {
+            @Override
+            public void onStart(CreateOrderContext context) {
+                throw new RuntimeException("Сбой");
+            }
+        };
+        var third = new RecordingObserver(1);
+        var orderService = new OrderService(List.of(first, second, third));
+
+        assertThrows(RuntimeException.class, () -> orderService.create(request(10)));
+        assertEquals(1, first.errors.get());
+        assertEquals(1, second.errors.get());
+        assertEquals(0, third.errors.get());
+    }
+
+    private static Throwable failure(CompletableFuture<Order> future) {
+        var error = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        return error.getCause();
+    }
+
+    private static CreateOrderRequest request(int balance) {
+        return new CreateOrderRequest(new UUID(1, balance), UUID.randomUUID());
+    }
+
+    private static class RecordingObserver implements CreateOrderObserver {
+        private final int price;
+        final AtomicInteger ends = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+
+        private RecordingObserver(int price) {
+            this.price = price;
+        }
+
+        //баланс пользователя передается в младших битах userId
+        @Override
+        public void onStart(CreateOrderContext context) {
+            var request = context.getRequest();
+            context.setUser(new User(request.getUserId(), "user", (int) request.getUserId().getLeastSignificantBits()));
+            context.setProduct(new Product(request.getProductId(), "product", price));
+        }
+
+        @Override
+        public void onEnd(CreateOrderContext context) {
+            ends.incrementAndGet();
+        }
+
+        @Override
+        public void onError(CreateOrderContext context, Throwable error) {
+            errors.incrementAndGet();
+        }
+    }
+}
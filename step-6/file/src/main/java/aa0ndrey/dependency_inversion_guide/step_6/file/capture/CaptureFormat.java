@@ -0,0 +1,20 @@
+package aa0ndrey.dependency_inversion_guide.step_6.file.capture;
+
+//заголовок: magic (4), version (4)
+//запись версии 2: type (1), timestampNanos (8), затем для REQUEST: userId (16), productId (16), flags (1),
+//idempotencyKey (16), deadlineNanos (8) - оставшееся на момент записи время;
+//для GAP: количество запросов, не попавших в запись (8), и нули до конца записи
+//запись версии 1: timestampNanos (8), userId (16), productId (16)
+public class CaptureFormat {
+    public static final int MAGIC = 0x4F524351;
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 8;
+    public static final int RECORD_SIZE = 66;
+    public static final int V1_RECORD_SIZE = 40;
+
+    public static final byte REQUEST = 0;
+    public static final byte GAP = 1;
+
+    public static final int HAS_IDEMPOTENCY_KEY = 1;
+    public static final int HAS_DEADLINE = 1 << 1;
+}
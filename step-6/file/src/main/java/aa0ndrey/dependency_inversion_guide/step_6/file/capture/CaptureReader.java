@@ -0,0 +1,79 @@
+package aa0ndrey.dependency_inversion_guide.step_6.file.capture;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+public class CaptureReader implements Closeable {
+    private final DataInputStream input;
+    private final int version;
+    private final long count;
+    private long dropped;
+
+    public CaptureReader(Path path) throws IOException {
+        this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+        this.version = input.readInt() == CaptureFormat.MAGIC ? input.readInt() : -1;
+        if (version != 1 && version != CaptureFormat.VERSION) {
+            input.close();
+            throw new IOException("Неизвестный формат файла записи запросов");
+        }
+        var recordSize = version == 1 ? CaptureFormat.V1_RECORD_SIZE : CaptureFormat.RECORD_SIZE;
+        this.count = (Files.size(path) - CaptureFormat.HEADER_SIZE) / recordSize;
+    }
+
+    //количество записей в файле, включая отметки о пропусках
+    public long getCount() {
+        return count;
+    }
+
+    //количество запросов, не попавших в запись, среди уже прочитанных отметок о пропусках
+    public long getDropped() {
+        return dropped;
+    }
+
+    //возвращает null, когда записи закончились; отметки о пропусках учитываются в getDropped и пропускаются
+    public CapturedRequest next() throws IOException {
+        try {
+            if (version == 1) {
+                return new CapturedRequest(input.readLong(), readUuid(), readUuid(), null, -1);
+            }
+            while (true) {
+                var type = input.readByte();
+                var timestampNanos = input.readLong();
+                if (type == CaptureFormat.GAP) {
+                    dropped += input.readLong();
+                    input.skipNBytes(CaptureFormat.RECORD_SIZE - 1 - 8 - 8);
+                    continue;
+                }
+                var userId = readUuid();
+                var productId = readUuid();
+                var flags = input.readByte();
+                var idempotencyKey = readUuid();
+                var deadlineNanos = input.readLong();
+                return new CapturedRequest(
+                        timestampNanos,
+                        userId,
+                        productId,
+                        (flags & CaptureFormat.HAS_IDEMPOTENCY_KEY) != 0 ? idempotencyKey : null,
+                        (flags & CaptureFormat.HAS_DEADLINE) != 0 ? deadlineNanos : -1
+                );
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private UUID readUuid() throws IOException {
+        return new UUID(input.readLong(), input.readLong());
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
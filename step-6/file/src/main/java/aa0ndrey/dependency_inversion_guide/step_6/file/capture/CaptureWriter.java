@@ -0,0 +1,131 @@
+package aa0ndrey.dependency_inversion_guide.step_6.file.capture;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//запись на диск выполняется фоновым потоком, при переполнении очереди запросы не ждут, а отбрасываются из записи;
+//на месте отброшенных запросов в файл пишется отметка GAP с их количеством, чтобы воспроизведение знало о пропуске
+public class CaptureWriter implements Closeable {
+    private static final System.Logger LOGGER = System.getLogger(CaptureWriter.class.getName());
+    private static final int BATCH_SIZE = 1024;
+
+    private final BlockingQueue<CapturedRequest> queue;
+    private final DataOutputStream output;
+    private final Thread writer;
+    private final AtomicLong dropped = new AtomicLong();
+    //отброшенные запросы, для которых отметка GAP еще не записана
+    private final AtomicLong pendingGap = new AtomicLong();
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    public CaptureWriter(Path path, int queueCapacity) throws IOException {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+        output.writeInt(CaptureFormat.MAGIC);
+        output.writeInt(CaptureFormat.VERSION);
+        this.writer = new Thread(this::run, "capture-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    //после ошибки записи запросы больше не ставятся в очередь и считаются отброшенными
+    public void record(CreateOrderRequest request) {
+        if (failure != null || !queue.offer(CapturedRequest.of(System.nanoTime(), request))) {
+            dropped.incrementAndGet();
+            pendingGap.incrementAndGet();
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public IOException getFailure() {
+        return failure;
+    }
+
+    private void run() {
+        var batch = new ArrayList<CapturedRequest>(BATCH_SIZE);
+        try {
+            while (!closed || !queue.isEmpty()) {
+                var first = queue.poll(10, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    writeGap();
+                    output.flush();
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                for (var captured : batch) {
+                    write(captured);
+                }
+                batch.clear();
+                writeGap();
+            }
+            writeGap();
+            output.flush();
+        } catch (IOException e) {
+            failure = e;
+            queue.clear();
+            LOGGER.log(System.Logger.Level.ERROR, "Запись запросов остановлена из-за ошибки записи в файл", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(CapturedRequest captured) throws IOException {
+        output.writeByte(CaptureFormat.REQUEST);
+        output.writeLong(captured.getTimestampNanos());
+        writeUuid(captured.getUserId());
+        writeUuid(captured.getProductId());
+        var idempotencyKey = captured.getIdempotencyKey();
+        var hasDeadline = captured.getDeadlineNanos() >= 0;
+        output.writeByte((idempotencyKey != null ? CaptureFormat.HAS_IDEMPOTENCY_KEY : 0)
+                | (hasDeadline ? CaptureFormat.HAS_DEADLINE : 0));
+        writeUuid(idempotencyKey != null ? idempotencyKey : new UUID(0, 0));
+        output.writeLong(hasDeadline ? captured.getDeadlineNanos() : 0);
+    }
+
+    //отметка пишется после запросов, уже стоявших в очереди в момент переполнения, то есть примерно на месте пропуска
+    private void writeGap() throws IOException {
+        var count = pendingGap.getAndSet(0);
+        if (count == 0) {
+            return;
+        }
+        output.writeByte(CaptureFormat.GAP);
+        output.writeLong(System.nanoTime());
+        output.writeLong(count);
+        output.write(new byte[CaptureFormat.RECORD_SIZE - 1 - 8 - 8]);
+    }
+
+    private void writeUuid(UUID uuid) throws IOException {
+        output.writeLong(uuid.getMostSignificantBits());
+        output.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        output.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package aa0ndrey.dependency_inversion_guide.step_6.file.capture;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+public class CapturedRequest {
+    private long timestampNanos;
+    private UUID userId;
+    private UUID productId;
+    private UUID idempotencyKey;
+    //оставшееся до истечения срока время на момент записи, -1 если срока нет
+    private long deadlineNanos;
+
+    public static CapturedRequest of(long timestampNanos, CreateOrderRequest request) {
+        var deadline = request.getDeadline();
+        return new CapturedRequest(
+                timestampNanos,
+                request.getUserId(),
+                request.getProductId(),
+                request.getIdempotencyKey(),
+                deadline.isNever() ? -1 : deadline.remaining().toNanos()
+        );
+    }
+
+    //срок отсчитывается заново от момента вызова, то есть от момента отправки при воспроизведении
+    public CreateOrderRequest toRequest() {
+        var deadline = deadlineNanos < 0 ? Deadline.NEVER : Deadline.after(Duration.ofNanos(deadlineNanos));
+        return new CreateOrderRequest(userId, productId, deadline, idempotencyKey);
+    }
+}
@@ -0,0 +1,16 @@
+package aa0ndrey.dependency_inversion_guide.step_6.file.capture;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderContext;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.OrderService;
+import lombok.RequiredArgsConstructor;
+
+@RequiredArgsConstructor
+public class RecordingOrderService {
+    private final OrderService orderService;
+    private final CaptureWriter writer;
+
+    public void create(CreateOrderContext context) {
+        writer.record(context.getRequest());
+        orderService.create(context);
+    }
+}
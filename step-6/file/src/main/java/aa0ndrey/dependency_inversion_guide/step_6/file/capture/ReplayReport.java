@@ -0,0 +1,59 @@
+package aa0ndrey.dependency_inversion_guide.step_6.file.capture;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Arrays;
+
+@Data
+@AllArgsConstructor
+public class ReplayReport {
+    private long count;
+    private long errors;
+    //запросы, не попавшие в запись из-за переполнения очереди CaptureWriter
+    private long dropped;
+    private long durationNanos;
+    private long p50Nanos;
+    private long p99Nanos;
+    private long maxNanos;
+
+    //отрицательные значения latencies - запросы, которые не выполнялись, и в распределение не входят
+    public static ReplayReport of(long[] latencies, long errors, long dropped, long durationNanos) {
+        var sorted = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+        return new ReplayReport(
+                sorted.length,
+                errors,
+                dropped,
+                durationNanos,
+                percentile(sorted, 0.5),
+                percentile(sorted, 0.99),
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1]
+        );
+    }
+
+    public double getThroughput() {
+        return durationNanos == 0 ? 0 : count * 1e9 / durationNanos;
+    }
+
+    public String diff(ReplayReport baseline) {
+        return String.format(
+                "throughput %.1f -> %.1f req/s (%+.1f%%), p50 %d -> %d us (%+.1f%%), p99 %d -> %d us (%+.1f%%), errors %d -> %d, dropped in capture %d -> %d",
+                baseline.getThroughput(), getThroughput(), change(baseline.getThroughput(), getThroughput()),
+                baseline.p50Nanos / 1000, p50Nanos / 1000, change(baseline.p50Nanos, p50Nanos),
+                baseline.p99Nanos / 1000, p99Nanos / 1000, change(baseline.p99Nanos, p99Nanos),
+                baseline.errors, errors,
+                baseline.dropped, dropped
+        );
+    }
+
+    private static double change(double before, double after) {
+        return before == 0 ? 0 : (after - before) * 100 / before;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(sorted.length * percentile) - 1)];
+    }
+}
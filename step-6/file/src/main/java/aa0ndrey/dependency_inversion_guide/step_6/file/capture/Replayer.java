@@ -0,0 +1,78 @@
+package aa0ndrey.dependency_inversion_guide.step_6.file.capture;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import lombok.RequiredArgsConstructor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+//target позволяет подать записанные запросы в OrderService любого шага, преобразовав CreateOrderRequest
+@RequiredArgsConstructor
+public class Replayer {
+    private final ExecutorService executor;
+
+    //speed: 1 - исходная скорость, N - ускорение в N раз, 0 - максимальная скорость без пауз
+    public ReplayReport replay(Path capture, Consumer<CreateOrderRequest> target, double speed)
+            throws IOException, InterruptedException {
+        try (var reader = new CaptureReader(capture)) {
+            //-1 - запрос не выполнялся: запись оказалась отметкой о пропуске или исполнитель отказал в запуске
+            var latencies = new long[(int) reader.getCount()];
+            Arrays.fill(latencies, -1);
+            var errors = new AtomicLong();
+            var done = new CountDownLatch(latencies.length);
+
+            var start = System.nanoTime();
+            var firstTimestamp = 0L;
+            var sent = 0;
+            CapturedRequest captured;
+            for (; sent < latencies.length && (captured = reader.next()) != null; sent++) {
+                if (sent == 0) {
+                    firstTimestamp = captured.getTimestampNanos();
+                }
+                //задержка считается от запланированного времени отправки, а не от фактического запуска,
+                //иначе время ожидания за медленными запросами не попало бы в измерения
+                var scheduled = System.nanoTime();
+                if (speed > 0) {
+                    //время отправки считается от начала, а не от предыдущего запроса, чтобы ошибки не накапливались
+                    scheduled = start + (long) ((captured.getTimestampNanos() - firstTimestamp) / speed);
+                    long now;
+                    while ((now = System.nanoTime()) < scheduled) {
+                        LockSupport.parkNanos(scheduled - now);
+                    }
+                }
+
+                var index = sent;
+                var due = scheduled;
+                var request = captured.toRequest();
+                try {
+                    executor.execute(() -> {
+                        try {
+                            target.accept(request);
+                        } catch (RuntimeException e) {
+                            errors.incrementAndGet();
+                        } finally {
+                            latencies[index] = System.nanoTime() - due;
+                            done.countDown();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    errors.incrementAndGet();
+                    done.countDown();
+                }
+            }
+            //отметки о пропусках не отправляются, поэтому запросов может оказаться меньше, чем записей
+            for (var i = sent; i < latencies.length; i++) {
+                done.countDown();
+            }
+            done.await();
+            return ReplayReport.of(latencies, errors.get(), reader.getDropped(), System.nanoTime() - start);
+        }
+    }
+}
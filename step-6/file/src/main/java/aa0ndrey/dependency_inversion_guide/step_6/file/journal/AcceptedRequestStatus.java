@@ -0,0 +1,8 @@
+package aa0ndrey.dependency_inversion_guide.step_6.file.journal;
+
+public enum AcceptedRequestStatus {
+    UNKNOWN,
+    ACCEPTED,
+    PROCESSED,
+    FAILED
+}
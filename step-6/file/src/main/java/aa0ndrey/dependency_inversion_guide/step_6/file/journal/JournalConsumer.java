@@ -0,0 +1,164 @@
+package aa0ndrey.dependency_inversion_guide.step_6.file.journal;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.idempotency.IdempotentOrderService;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderContext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.LockSupport;
+
+//доставка не реже одного раза: смещение фиксируется после обработки пачки,
+//поэтому после сбоя пачка обрабатывается повторно, а повторы отсекаются по idempotencyKey;
+//ошибки записываются в файл до фиксации смещения и переживают перезапуск,
+//статус хранится для последних retention запросов, для более старых он UNKNOWN
+public class JournalConsumer implements Runnable {
+    private static final int MAX_MESSAGE_BYTES = 1024;
+
+    private final OrderJournal journal;
+    private final IdempotentOrderService orderService;
+    private final FileChannel offsetChannel;
+    private final FileChannel failureChannel;
+    private final int batchSize;
+    private final long retention;
+    private final NavigableMap<Long, String> failures = new ConcurrentSkipListMap<>();
+    private volatile long committedOffset;
+
+    public JournalConsumer(
+            OrderJournal journal,
+            IdempotentOrderService orderService,
+            Path offsetFile,
+            Path failureFile,
+            int batchSize,
+            long retention
+    ) throws IOException {
+        this.journal = journal;
+        this.orderService = orderService;
+        this.batchSize = batchSize;
+        this.retention = retention;
+        this.offsetChannel = FileChannel.open(offsetFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        var buffer = ByteBuffer.allocate(Long.BYTES);
+        this.committedOffset = offsetChannel.read(buffer, 0) == Long.BYTES ? buffer.flip().getLong() : 0;
+        //смещение фиксируется только в пределах записей, покрытых fsync, поэтому оно не может опережать журнал;
+        //иначе новые записи получили бы смещения ниже зафиксированного и никогда не были бы обработаны
+        if (committedOffset > journal.getSize()) {
+            throw new IllegalStateException("Зафиксированное смещение " + committedOffset
+                    + " больше размера журнала " + journal.getSize());
+        }
+        this.failureChannel = openFailures(failureFile);
+    }
+
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (poll() == 0) {
+                    LockSupport.parkNanos(1_000_000);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Ошибка чтения журнала заказов", e);
+            }
+        }
+    }
+
+    //обрабатываются только записи, покрытые fsync: запись после сбоя может быть отброшена,
+    //а ее смещение занято новым запросом, который тогда считался бы уже обработанным
+    public int poll() throws IOException {
+        var offset = committedOffset;
+        if (offset >= journal.getDurableSize()) {
+            return 0;
+        }
+
+        var requests = journal.read(offset, batchSize);
+        var failed = false;
+        for (var i = 0; i < requests.size(); i++) {
+            try {
+                orderService.create(new CreateOrderContext(requests.get(i)));
+            } catch (RuntimeException e) {
+                appendFailure(offset + i, String.valueOf(e.getMessage()));
+                failed = true;
+            }
+        }
+        if (failed) {
+            failureChannel.force(false);
+        }
+        commit(offset + requests.size());
+        return requests.size();
+    }
+
+    public AcceptedRequestStatus status(long offset) {
+        if (offset < 0 || offset >= journal.getSize() || offset < committedOffset - retention) {
+            return AcceptedRequestStatus.UNKNOWN;
+        }
+        if (offset >= committedOffset) {
+            return AcceptedRequestStatus.ACCEPTED;
+        }
+        return failures.containsKey(offset) ? AcceptedRequestStatus.FAILED : AcceptedRequestStatus.PROCESSED;
+    }
+
+    public String getFailure(long offset) {
+        return failures.get(offset);
+    }
+
+    private void commit(long offset) throws IOException {
+        offsetChannel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, offset), 0);
+        offsetChannel.force(false);
+        committedOffset = offset;
+        failures.headMap(offset - retention).clear();
+    }
+
+    //запись ошибки: смещение (8), длина текста (2), текст в UTF-8
+    private void appendFailure(long offset, String message) throws IOException {
+        var bytes = message.getBytes(StandardCharsets.UTF_8);
+        var length = Math.min(bytes.length, MAX_MESSAGE_BYTES);
+        var buffer = ByteBuffer.allocate(Long.BYTES + Short.BYTES + length);
+        buffer.putLong(offset).putShort((short) length).put(bytes, 0, length).flip();
+        while (buffer.hasRemaining()) {
+            failureChannel.write(buffer);
+        }
+        failures.put(offset, new String(bytes, 0, length, StandardCharsets.UTF_8));
+    }
+
+    //при открытии файл переписывается только с ошибками из окна retention, поэтому он не растет без ограничений
+    private FileChannel openFailures(Path failureFile) throws IOException {
+        if (Files.exists(failureFile)) {
+            var content = ByteBuffer.wrap(Files.readAllBytes(failureFile));
+            while (content.remaining() >= Long.BYTES + Short.BYTES) {
+                var offset = content.getLong();
+                var length = content.getShort();
+                if (length < 0 || length > content.remaining()) {
+                    //неполная последняя запись после сбоя
+                    break;
+                }
+                var bytes = new byte[length];
+                content.get(bytes);
+                if (offset >= committedOffset - retention && offset < committedOffset) {
+                    failures.put(offset, new String(bytes, StandardCharsets.UTF_8));
+                }
+            }
+        }
+
+        var temp = failureFile.resolveSibling(failureFile.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Map.Entry<Long, String> failure : failures.entrySet()) {
+                var bytes = failure.getValue().getBytes(StandardCharsets.UTF_8);
+                var buffer = ByteBuffer.allocate(Long.BYTES + Short.BYTES + bytes.length);
+                buffer.putLong(failure.getKey()).putShort((short) bytes.length).put(bytes).flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            channel.force(false);
+        }
+        Files.move(temp, failureFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return FileChannel.open(failureFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,187 @@
+package aa0ndrey.dependency_inversion_guide.step_6.file.journal;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+
+//запись: userId (16), productId (16), признак наличия idempotencyKey (1), idempotencyKey (16), CRC32C первых 49 байт (4)
+//смещение запроса - номер записи в журнале, оно же служит квитанцией для проверки статуса
+public class OrderJournal implements Closeable {
+    static final int PAYLOAD_SIZE = 49;
+    static final int RECORD_SIZE = PAYLOAD_SIZE + Integer.BYTES;
+    private static final int SCAN_BATCH = 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(RECORD_SIZE);
+    private final CRC32C writeCrc = new CRC32C();
+    private volatile long size;
+
+    //групповая фиксация: один поток выполняет force за всех, кто ждет, остальные ждут на flushLock
+    private final Object flushLock = new Object();
+    //записи до durableSize покрыты fsync и переживут сбой, более поздние могут быть отброшены при открытии
+    private volatile long durableSize;
+    private boolean flushing;
+
+    public OrderJournal(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        //после сбоя питания хвост может быть заполнен нулями или записан частично, такие записи не проходят проверку CRC
+        this.size = countValidRecords();
+        channel.truncate(size * RECORD_SIZE);
+        channel.force(false);
+        this.durableSize = size;
+    }
+
+    //смещение возвращается только после fsync, который покрывает запись, поэтому подтвержденный запрос не теряется;
+    //одновременные запросы разделяют один fsync
+    public long accept(CreateOrderRequest request) throws IOException {
+        var offset = write(request);
+        awaitDurable(offset + 1);
+        return offset;
+    }
+
+    //запись без ожидания fsync, смещение еще нельзя отдавать клиенту
+    synchronized long write(CreateOrderRequest request) throws IOException {
+        writeBuffer.clear();
+        writeUuid(writeBuffer, request.getUserId());
+        writeUuid(writeBuffer, request.getProductId());
+        var idempotencyKey = request.getIdempotencyKey();
+        writeBuffer.put((byte) (idempotencyKey != null ? 1 : 0));
+        writeUuid(writeBuffer, idempotencyKey != null ? idempotencyKey : new UUID(0, 0));
+        writeBuffer.flip();
+        writeCrc.reset();
+        writeCrc.update(writeBuffer.duplicate());
+        writeBuffer.limit(RECORD_SIZE);
+        writeBuffer.putInt(PAYLOAD_SIZE, (int) writeCrc.getValue());
+        writeBuffer.position(0);
+
+        var offset = size;
+        var position = offset * RECORD_SIZE;
+        while (writeBuffer.hasRemaining()) {
+            position += channel.write(writeBuffer, position);
+        }
+        size = offset + 1;
+        return offset;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getDurableSize() {
+        return durableSize;
+    }
+
+    //читаются только записи, покрытые fsync: обработанная запись не должна исчезнуть при сбое
+    List<CreateOrderRequest> read(long offset, int limit) throws IOException {
+        var count = (int) Math.max(0, Math.min(limit, durableSize - offset));
+        var buffer = ByteBuffer.allocate(count * RECORD_SIZE);
+        var position = offset * RECORD_SIZE;
+        while (buffer.hasRemaining()) {
+            position += channel.read(buffer, position);
+        }
+        buffer.flip();
+
+        var requests = new ArrayList<CreateOrderRequest>(count);
+        for (var i = 0; i < count; i++) {
+            var userId = readUuid(buffer);
+            var productId = readUuid(buffer);
+            var hasIdempotencyKey = buffer.get() == 1;
+            var idempotencyKey = readUuid(buffer);
+            buffer.getInt();
+            var request = new CreateOrderRequest(userId, productId);
+            request.setIdempotencyKey(hasIdempotencyKey ? idempotencyKey : null);
+            requests.add(request);
+        }
+        return requests;
+    }
+
+    public void flush() throws IOException {
+        awaitDurable(size);
+    }
+
+    private void awaitDurable(long target) throws IOException {
+        while (true) {
+            long upTo;
+            synchronized (flushLock) {
+                while (flushing && durableSize < target) {
+                    try {
+                        flushLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Ожидание записи журнала на диск прервано", e);
+                    }
+                }
+                if (durableSize >= target) {
+                    return;
+                }
+                flushing = true;
+                upTo = size;
+            }
+
+            IOException error = null;
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+            synchronized (flushLock) {
+                flushing = false;
+                if (error == null) {
+                    durableSize = Math.max(durableSize, upTo);
+                }
+                flushLock.notifyAll();
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    private long countValidRecords() throws IOException {
+        var records = channel.size() / RECORD_SIZE;
+        var buffer = ByteBuffer.allocate(SCAN_BATCH * RECORD_SIZE);
+        var crc = new CRC32C();
+        var valid = 0L;
+        while (valid < records) {
+            var count = (int) Math.min(SCAN_BATCH, records - valid);
+            buffer.clear().limit(count * RECORD_SIZE);
+            var position = valid * RECORD_SIZE;
+            while (buffer.hasRemaining()) {
+                position += channel.read(buffer, position);
+            }
+            for (var i = 0; i < count; i++) {
+                var start = i * RECORD_SIZE;
+                crc.reset();
+                crc.update(buffer.array(), start, PAYLOAD_SIZE);
+                if ((int) crc.getValue() != buffer.getInt(start + PAYLOAD_SIZE)) {
+                    return valid;
+                }
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    private static void writeUuid(ByteBuffer buffer, UUID uuid) {
+        buffer.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
@@ -0,0 +1,23 @@
+package aa0ndrey.dependency_inversion_guide.step_6.file.order_aggregate;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderContext;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderObserver;
+import lombok.RequiredArgsConstructor;
+
+//увеличение агрегата не откатывается: OrderService не вызывает onError у наблюдателя, уже завершившего onEnd,
+//поэтому наблюдатель регистрируется через CreateOrderObserverRegistry.registerAfter после наблюдателя,
+//фиксирующего заказ, и учитывает только зафиксированные заказы
+@RequiredArgsConstructor
+public class OrderAggregateObserverImpl implements CreateOrderObserver {
+    private final UserOrderAggregates aggregates;
+
+    @Override
+    public void onStart(CreateOrderContext context) {
+    }
+
+    @Override
+    public void onEnd(CreateOrderContext context) {
+        var order = context.getCreatedOrder();
+        aggregates.add(order.getUserId(), 1, (long) context.getProductPrice() * order.getQuantity());
+    }
+}
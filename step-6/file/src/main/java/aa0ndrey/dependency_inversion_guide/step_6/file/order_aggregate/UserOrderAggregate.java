@@ -0,0 +1,11 @@
+package aa0ndrey.dependency_inversion_guide.step_6.file.order_aggregate;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class UserOrderAggregate {
+    private long orderCount;
+    private long totalSpend;
+}
@@ -0,0 +1,10 @@
+package aa0ndrey.dependency_inversion_guide.step_6.file.order_aggregate;
+
+//источник заказов для восстановления агрегатов после последнего снимка
+public interface UserOrderAggregateSource {
+    //пересчитывает агрегаты целиком для пользователей, у которых есть заказы не раньше watermarkMillis.
+    //id заказов - UUID версии 7, поэтому граница переводится в UUID с этим временем и нулевыми остальными битами:
+    //select o.user_id, count(*), sum(p.price * o.quantity) from "order" o join product p on p.id = o.product_id
+    //where o.user_id in (select user_id from "order" where id >= ?) group by o.user_id
+    void forEachUserWithOrdersSince(long watermarkMillis, UserOrderAggregates.Visitor visitor);
+}
@@ -0,0 +1,203 @@
+package aa0ndrey.dependency_inversion_guide.step_6.file.order_aggregate;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+//таблица разбита на сегменты, ключ хранится как два long без объектов UUID,
+//счетчики пользователя - LongAdder, поэтому заказы существующего пользователя не берут блокировку сегмента
+public class UserOrderAggregates {
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    public UserOrderAggregates(int stripes, int initialCapacityPerStripe) {
+        var count = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new Stripe[count];
+        for (var i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe(Integer.highestOneBit(Math.max(2, initialCapacityPerStripe - 1)) << 1);
+        }
+        this.stripeMask = count - 1;
+    }
+
+    public void add(UUID userId, long orderCount, long spend) {
+        var cell = cellOf(userId, true);
+        cell.orderCount.add(orderCount);
+        cell.totalSpend.add(spend);
+    }
+
+    //заменяет агрегат пользователя, используется только при восстановлении до начала обработки заказов
+    public void set(UUID userId, long orderCount, long totalSpend) {
+        var cell = cellOf(userId, true);
+        cell.orderCount.reset();
+        cell.orderCount.add(orderCount);
+        cell.totalSpend.reset();
+        cell.totalSpend.add(totalSpend);
+    }
+
+    //количество и сумма читаются по отдельности, поэтому при параллельной записи могут относиться к разным моментам
+    public UserOrderAggregate get(UUID userId) {
+        var cell = cellOf(userId, false);
+        return cell != null ? new UserOrderAggregate(cell.orderCount.sum(), cell.totalSpend.sum()) : null;
+    }
+
+    public boolean isEmpty() {
+        for (var stripe : stripes) {
+            if (!stripe.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void forEach(Visitor visitor) {
+        for (var stripe : stripes) {
+            stripe.forEach(visitor);
+        }
+    }
+
+    private Cell cellOf(UUID userId, boolean create) {
+        var msb = userId.getMostSignificantBits();
+        var lsb = userId.getLeastSignificantBits();
+        var hash = hash(msb, lsb);
+        return stripes[hash & stripeMask].cell(msb, lsb, hash, create);
+    }
+
+    private static int hash(long msb, long lsb) {
+        var hash = msb ^ lsb;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+
+    public interface Visitor {
+        void visit(long userIdMsb, long userIdLsb, long orderCount, long totalSpend);
+    }
+
+    private static class Cell {
+        private final LongAdder orderCount = new LongAdder();
+        private final LongAdder totalSpend = new LongAdder();
+    }
+
+    //блокировка сегмента нужна только для добавления нового пользователя и расширения таблицы
+    private static class Stripe {
+        private final StampedLock lock = new StampedLock();
+        private long[] msbs;
+        private long[] lsbs;
+        private Cell[] cells;
+        private int size;
+
+        private Stripe(int capacity) {
+            allocate(capacity);
+        }
+
+        private Cell cell(long msb, long lsb, int hash, boolean create) {
+            var stamp = lock.tryOptimisticRead();
+            var cell = lookup(msb, lsb, hash);
+            if (lock.validate(stamp) && (cell != null || !create)) {
+                return cell;
+            }
+            if (!create) {
+                stamp = lock.readLock();
+                try {
+                    return lookup(msb, lsb, hash);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            stamp = lock.writeLock();
+            try {
+                if ((size + 1) * 2 > cells.length) {
+                    resize();
+                }
+                var slot = find(msb, lsb, hash);
+                if (cells[slot] == null) {
+                    msbs[slot] = msb;
+                    lsbs[slot] = lsb;
+                    cells[slot] = new Cell();
+                    size++;
+                }
+                return cells[slot];
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private Cell lookup(long msb, long lsb, int hash) {
+            //при оптимистичном чтении массивы могут быть заменены, поэтому читаются один раз
+            var cells = this.cells;
+            var msbs = this.msbs;
+            var lsbs = this.lsbs;
+            if (cells.length != msbs.length || cells.length != lsbs.length) {
+                return null;
+            }
+            var mask = cells.length - 1;
+            var slot = (hash >>> 8) & mask;
+            for (var probes = 0; probes < cells.length; probes++) {
+                var cell = cells[slot];
+                if (cell == null) {
+                    return null;
+                }
+                if (msbs[slot] == msb && lsbs[slot] == lsb) {
+                    return cell;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        private boolean isEmpty() {
+            var stamp = lock.readLock();
+            try {
+                return size == 0;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private void forEach(Visitor visitor) {
+            var stamp = lock.readLock();
+            try {
+                for (var slot = 0; slot < cells.length; slot++) {
+                    var cell = cells[slot];
+                    if (cell != null) {
+                        visitor.visit(msbs[slot], lsbs[slot], cell.orderCount.sum(), cell.totalSpend.sum());
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private int find(long msb, long lsb, int hash) {
+            var mask = cells.length - 1;
+            var slot = (hash >>> 8) & mask;
+            while (cells[slot] != null && (msbs[slot] != msb || lsbs[slot] != lsb)) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        //ячейки переносятся по ссылке, поэтому добавления в них во время расширения не теряются
+        private void resize() {
+            var oldMsbs = msbs;
+            var oldLsbs = lsbs;
+            var oldCells = cells;
+            allocate(oldCells.length * 2);
+            for (var i = 0; i < oldCells.length; i++) {
+                if (oldCells[i] != null) {
+                    var slot = find(oldMsbs[i], oldLsbs[i], hash(oldMsbs[i], oldLsbs[i]));
+                    msbs[slot] = oldMsbs[i];
+                    lsbs[slot] = oldLsbs[i];
+                    cells[slot] = oldCells[i];
+                }
+            }
+        }
+
+        private void allocate(int capacity) {
+            msbs = new long[capacity];
+            lsbs = new long[capacity];
+            cells = new Cell[capacity];
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package aa0ndrey.dependency_inversion_guide.step_6.file.order_aggregate;
+
+import lombok.RequiredArgsConstructor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//снимок начинается с границы восстановления (8), затем по одной записи на пользователя:
+//userId (16), orderCount (8), totalSpend (8)
+@RequiredArgsConstructor
+public class UserOrderAggregatesSnapshot {
+    private static final System.Logger LOGGER = System.getLogger(UserOrderAggregatesSnapshot.class.getName());
+
+    private final UserOrderAggregates aggregates;
+    private final Path path;
+    //время от генерации id заказа до вызова onEnd, за которое заказ гарантированно попадает в агрегаты
+    private final long replayLagMillis;
+
+    public void startSnapshots(ScheduledExecutorService executor, long period, TimeUnit unit) {
+        executor.scheduleWithFixedDelay(() -> {
+            //исключение остановило бы все последующие запуски, поэтому ошибка только логируется
+            try {
+                write();
+            } catch (Exception e) {
+                LOGGER.log(System.Logger.Level.ERROR, "Не удалось записать снимок агрегатов заказов", e);
+            }
+        }, period, period, unit);
+    }
+
+    //снимок сначала пишется во временный файл, чтобы при сбое на диске остался предыдущий целый снимок
+    public void write() throws IOException {
+        //заказы с id раньше границы уже учтены, более поздние при восстановлении пересчитываются из источника
+        var watermark = System.currentTimeMillis() - replayLagMillis;
+        var temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            var output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            output.writeLong(watermark);
+            var failure = new IOException[1];
+            aggregates.forEach((msb, lsb, orderCount, totalSpend) -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    output.writeLong(msb);
+                    output.writeLong(lsb);
+                    output.writeLong(orderCount);
+                    output.writeLong(totalSpend);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            output.flush();
+            //без force после переименования на диске мог бы оказаться файл с неполным содержимым
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    //загрузка выполняется до начала обработки заказов в пустую таблицу, иначе значения были бы учтены дважды
+    public void load(UserOrderAggregateSource source) throws IOException {
+        if (!aggregates.isEmpty()) {
+            throw new IllegalStateException("Агрегаты заказов уже заполнены");
+        }
+        var watermark = 0L;
+        if (Files.exists(path)) {
+            try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+                watermark = input.readLong();
+                while (true) {
+                    long msb;
+                    try {
+                        msb = input.readLong();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    aggregates.add(new UUID(msb, input.readLong()), input.readLong(), input.readLong());
+                }
+            }
+        }
+        source.forEachUserWithOrdersSince(watermark, (msb, lsb, orderCount, totalSpend) ->
+                aggregates.set(new UUID(msb, lsb), orderCount, totalSpend));
+    }
+}
@@ -0,0 +1,136 @@
+package aa0ndrey.dependency_inversion_guide.step_6.file.journal;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.idempotency.IdempotencyTable;
+import aa0ndrey.dependency_inversion_guide.step_6.core.idempotency.IdempotentOrderService;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderContext;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderObserver;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.OrderService;
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournalConsumerTest {
+    private static final UUID MISSING_PRODUCT = new UUID(0, 0);
+
+    @TempDir
+    Path directory;
+
+    private final Set<UUID> created = ConcurrentHashMap.newKeySet();
+
+    @Test
+    void processesAcceptedRequestsAndKeepsFailuresAcrossRestart() throws IOException {
+        try (var journal = new OrderJournal(directory.resolve("journal"))) {
+            var ok = journal.accept(request(UUID.randomUUID()));
+            var failed = journal.accept(request(MISSING_PRODUCT));
+            var consumer = consumer(journal);
+            assertEquals(AcceptedRequestStatus.ACCEPTED, consumer.status(ok));
+
+            assertEquals(2, consumer.poll());
+            assertEquals(0, consumer.poll());
+            assertEquals(AcceptedRequestStatus.PROCESSED, consumer.status(ok));
+            assertEquals(AcceptedRequestStatus.FAILED, consumer.status(failed));
+            assertEquals(1, created.size());
+
+            var restarted = consumer(journal);
+            assertEquals(0, restarted.poll());
+            assertEquals(AcceptedRequestStatus.FAILED, restarted.status(failed));
+            assertEquals("Товар не найден", restarted.getFailure(failed));
+        }
+    }
+
+    @Test
+    void recordNotYetFsyncedIsNotProcessed() throws IOException {
+        try (var journal = new OrderJournal(directory.resolve("journal"))) {
+            var consumer = consumer(journal);
+            journal.write(request(UUID.randomUUID()));
+
+            assertEquals(0, consumer.poll());
+            assertTrue(created.isEmpty());
+            journal.flush();
+            assertEquals(1, consumer.poll());
+        }
+    }
+
+    //запись, не покрытая fsync, теряется при сбое, и ее смещение занимает новый запрос, который должен быть обработан
+    @Test
+    void requestReusingOffsetOfLostRecordIsProcessedAfterCrash() throws IOException {
+        var path = directory.resolve("journal");
+        var crashed = new OrderJournal(path);
+        crashed.accept(request(UUID.randomUUID()));
+        crashed.write(request(UUID.randomUUID()));
+        assertEquals(1, consumer(crashed).poll());
+        //сбой: журнал не закрывается, а незафиксированная запись не доходит до диска
+        try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(OrderJournal.RECORD_SIZE);
+        }
+
+        try (var journal = new OrderJournal(path)) {
+            var consumer = consumer(journal);
+            var request = request(UUID.randomUUID());
+            var offset = journal.accept(request);
+            assertEquals(1, offset);
+            assertEquals(AcceptedRequestStatus.ACCEPTED, consumer.status(offset));
+            assertEquals(1, consumer.poll());
+            assertEquals(AcceptedRequestStatus.PROCESSED, consumer.status(offset));
+            assertTrue(created.contains(request.getUserId()));
+        }
+        crashed.close();
+    }
+
+    @Test
+    void offsetAheadOfJournalIsRejected() throws IOException {
+        try (var journal = new OrderJournal(directory.resolve("journal"))) {
+            journal.accept(request(UUID.randomUUID()));
+            journal.accept(request(UUID.randomUUID()));
+            consumer(journal).poll();
+        }
+        try (var channel = FileChannel.open(directory.resolve("journal"), StandardOpenOption.WRITE)) {
+            channel.truncate(OrderJournal.RECORD_SIZE);
+        }
+        try (var journal = new OrderJournal(directory.resolve("journal"))) {
+            assertThrows(IllegalStateException.class, () -> consumer(journal));
+        }
+    }
+
+    private JournalConsumer consumer(OrderJournal journal) throws IOException {
+        var orderService = new OrderService(List.of(new CreateOrderObserver() {
+            @Override
+            public void onStart(CreateOrderContext context) {
+                var request = context.getRequest();
+                if (MISSING_PRODUCT.equals(request.getProductId())) {
+                    throw new RuntimeException("Товар не найден");
+                }
+                context.setUser(new User(request.getUserId(), "user", 100));
+                context.setProduct(new Product(request.getProductId(), "product", 10));
+            }
+
+            @Override
+            public void onEnd(CreateOrderContext context) {
+                created.add(context.getCreatedOrder().getUserId());
+            }
+        }));
+        var table = new IdempotencyTable(1024, TimeUnit.MINUTES.toNanos(1));
+        return new JournalConsumer(journal, new IdempotentOrderService(orderService, table),
+                directory.resolve("offset"), directory.resolve("failures"), 16, 1024);
+    }
+
+    private static CreateOrderRequest request(UUID productId) {
+        return new CreateOrderRequest(UUID.randomUUID(), productId);
+    }
+}
@@ -0,0 +1,75 @@
+package aa0ndrey.dependency_inversion_guide.step_6.file.journal;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class OrderJournalTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void acceptedRequestsSurviveReopen() throws IOException {
+        var path = directory.resolve("journal");
+        var first = new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID());
+        var second = new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID());
+        second.setIdempotencyKey(UUID.randomUUID());
+        try (var journal = new OrderJournal(path)) {
+            assertEquals(0, journal.accept(first));
+            assertEquals(1, journal.accept(second));
+            assertEquals(2, journal.getDurableSize());
+        }
+
+        try (var journal = new OrderJournal(path)) {
+            assertEquals(2, journal.getSize());
+            var requests = journal.read(0, 10);
+            assertEquals(first.getUserId(), requests.get(0).getUserId());
+            assertNull(requests.get(0).getIdempotencyKey());
+            assertEquals(second.getProductId(), requests.get(1).getProductId());
+            assertEquals(second.getIdempotencyKey(), requests.get(1).getIdempotencyKey());
+        }
+    }
+
+    @Test
+    void tornTailIsTruncatedOnOpen() throws IOException {
+        var path = directory.resolve("journal");
+        try (var journal = new OrderJournal(path)) {
+            journal.accept(new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID()));
+            journal.accept(new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID()));
+        }
+        //после сбоя питания вторая запись записана наполовину, а за ней нули
+        try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(OrderJournal.RECORD_SIZE + OrderJournal.RECORD_SIZE / 2);
+            channel.write(ByteBuffer.allocate(OrderJournal.RECORD_SIZE * 2), channel.size());
+        }
+
+        try (var journal = new OrderJournal(path)) {
+            assertEquals(1, journal.getSize());
+            assertEquals(1, journal.getDurableSize());
+            assertEquals(1, journal.accept(new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID())));
+        }
+    }
+
+    @Test
+    void readStopsAtDurableSize() throws IOException {
+        try (var journal = new OrderJournal(directory.resolve("journal"))) {
+            journal.accept(new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID()));
+            journal.write(new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID()));
+
+            assertEquals(2, journal.getSize());
+            assertEquals(1, journal.read(0, 10).size());
+            journal.flush();
+            assertEquals(2, journal.read(0, 10).size());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package aa0ndrey.dependency_inversion_guide.step_6.file.order_aggregate;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderContext;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderObserver;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderObserverRegistry;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.OrderService;
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OrderAggregateObserverImplTest {
+    private final UserOrderAggregates aggregates = new UserOrderAggregates(4, 16);
+    private final OrderAggregateObserverImpl observer = new OrderAggregateObserverImpl(aggregates);
+    private final CommittingObserver committing = new CommittingObserver();
+    private final CreateOrderObserverRegistry registry = new CreateOrderObserverRegistry(List.of(new LoadingObserver(), committing));
+    private final OrderService service = new OrderService(registry);
+
+    @Test
+    void committedOrderIsCounted() {
+        registry.registerAfter(observer, committing);
+        var request = new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID());
+
+        service.create(request);
+        service.create(request);
+
+        assertEquals(new UserOrderAggregate(2, 20), aggregates.get(request.getUserId()));
+    }
+
+    //если фиксация заказа не удалась, onEnd агрегата не вызывается и увеличивать нечего
+    @Test
+    void failedCommitIsNotCounted() {
+        registry.registerAfter(observer, committing);
+        var request = new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID());
+        committing.fail = true;
+
+        assertThrows(RuntimeException.class, () -> service.create(request));
+
+        assertNull(aggregates.get(request.getUserId()));
+    }
+
+    @Test
+    void observerIsSkippedWhileCommittingObserverIsDisabled() {
+        registry.registerAfter(observer, committing);
+        var request = new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID());
+
+        registry.setEnabled(committing, false);
+        service.create(request);
+        registry.setEnabled(committing, true);
+        service.create(request);
+
+        assertEquals(new UserOrderAggregate(1, 10), aggregates.get(request.getUserId()));
+    }
+
+    //после повторной регистрации фиксирующий наблюдатель вызывается позже агрегата, порядок нарушен
+    @Test
+    void observerIsSkippedWhenCommittingObserverIsRegisteredAgain() {
+        registry.registerAfter(observer, committing);
+        var request = new CreateOrderRequest(UUID.randomUUID(), UUID.randomUUID());
+
+        registry.unregister(committing);
+        registry.register(committing);
+        service.create(request);
+
+        assertNull(aggregates.get(request.getUserId()));
+    }
+
+    @Test
+    void committingObserverMustBeRegistered() {
+        assertThrows(IllegalArgumentException.class, () -> registry.registerAfter(observer, new CommittingObserver()));
+    }
+
+    private static class LoadingObserver implements CreateOrderObserver {
+        @Override
+        public void onStart(CreateOrderContext context) {
+            var request = context.getRequest();
+            context.setUser(new User(request.getUserId(), "user", 100));
+            context.setProduct(new Product(request.getProductId(), "product", 10));
+        }
+
+        @Override
+        public void onEnd(CreateOrderContext context) {
+        }
+    }
+
+    private static class CommittingObserver implements CreateOrderObserver {
+        private boolean fail;
+
+        @Override
+        public void onStart(CreateOrderContext context) {
+        }
+
+        @Override
+        public void onEnd(CreateOrderContext context) {
+            if (fail) {
+                throw new RuntimeException("Не удалось зафиксировать заказ");
+            }
+        }
+    }
+}
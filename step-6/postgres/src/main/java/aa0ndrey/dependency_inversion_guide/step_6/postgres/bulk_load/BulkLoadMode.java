@@ -0,0 +1,8 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.bulk_load;
+
+public enum BulkLoadMode {
+    //протокол COPY ... from stdin
+    COPY,
+    //insert ... values (...), (...) для встраиваемых баз данных без поддержки COPY
+    MULTI_ROW_INSERT
+}
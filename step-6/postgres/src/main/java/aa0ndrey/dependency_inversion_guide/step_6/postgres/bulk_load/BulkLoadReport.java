@@ -0,0 +1,17 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.bulk_load;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Duration;
+
+@Data
+@AllArgsConstructor
+public class BulkLoadReport {
+    private long rows;
+    private Duration duration;
+
+    public double getRowsPerSecond() {
+        return duration.isZero() ? 0 : rows * 1e9 / duration.toNanos();
+    }
+}
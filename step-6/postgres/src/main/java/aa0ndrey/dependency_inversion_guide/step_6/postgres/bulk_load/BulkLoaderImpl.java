@@ -0,0 +1,287 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.bulk_load;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+//в памяти одновременно находится не больше partitions пачек по batchSize строк;
+//строки пачки пишутся в COPY или в параметры insert прямо из объектов, без промежуточных массивов и текста пачки
+public class BulkLoaderImpl {
+    //ограничение протокола postgres на число параметров одного запроса
+    private static final int MAX_PARAMETERS = 65_535;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static final Table<User> USER = new Table<>(
+            "\"user\"",
+            List.of("id", "name", "balance"),
+            List.of(User::getId, User::getName, User::getBalance)
+    );
+    private static final Table<Product> PRODUCT = new Table<>(
+            "product",
+            List.of("id", "title", "price"),
+            List.of(Product::getId, Product::getTitle, Product::getPrice)
+    );
+
+    private final DataSource dataSource;
+    private final BulkLoadMode mode;
+    private final int batchSize;
+    private final int partitions;
+
+    public BulkLoaderImpl(DataSource dataSource, BulkLoadMode mode, int batchSize, int partitions) {
+        this.dataSource = dataSource;
+        this.mode = mode;
+        this.batchSize = batchSize;
+        this.partitions = partitions;
+    }
+
+    public BulkLoadReport loadUsers(Iterator<User> users) throws InterruptedException {
+        return load(users, USER);
+    }
+
+    public BulkLoadReport loadProducts(Iterator<Product> products) throws InterruptedException {
+        return load(products, PRODUCT);
+    }
+
+    //строки файла: id,balance,name
+    public BulkLoadReport loadUsers(Path file) throws IOException, InterruptedException {
+        try (var reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return loadUsers(lines(reader, fields -> new User(UUID.fromString(fields[0]), fields[2], Integer.parseInt(fields[1]))));
+        }
+    }
+
+    //строки файла: id,price,title
+    public BulkLoadReport loadProducts(Path file) throws IOException, InterruptedException {
+        try (var reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return loadProducts(lines(reader, fields -> new Product(UUID.fromString(fields[0]), fields[2], Integer.parseInt(fields[1]))));
+        }
+    }
+
+    private <T> BulkLoadReport load(Iterator<T> rows, Table<T> table) throws InterruptedException {
+        var start = System.nanoTime();
+        var executor = Executors.newFixedThreadPool(partitions);
+        var permits = new Semaphore(partitions);
+        var failure = new AtomicReference<Throwable>();
+        var futures = new ArrayList<Future<?>>();
+        var total = 0L;
+        try {
+            while (rows.hasNext()) {
+                //разрешение берется до чтения пачки, поэтому вместе с собираемой в памяти не больше partitions пачек
+                permits.acquire();
+                //после первой ошибки чтение прекращается, а уже отправленные пачки прерываются в finally
+                if (failure.get() != null) {
+                    break;
+                }
+                var batch = new ArrayList<T>(batchSize);
+                while (rows.hasNext() && batch.size() < batchSize) {
+                    batch.add(rows.next());
+                }
+                total += batch.size();
+                futures.add(submit(executor, permits, failure, table, batch));
+            }
+            if (failure.get() == null) {
+                for (var future : futures) {
+                    future.get();
+                }
+            }
+        } catch (ExecutionException e) {
+            failure.compareAndSet(null, e.getCause());
+        } finally {
+            executor.shutdownNow();
+            //драйвер не прерывает запрос по interrupt, поэтому выход ждет, пока начатые пачки завершатся,
+            //иначе после исключения в таблицу еще продолжали бы писать потоки загрузчика
+            awaitTermination(executor);
+        }
+        if (failure.get() != null) {
+            throw new RuntimeException("Ошибка массовой загрузки в " + table.name, failure.get());
+        }
+        return new BulkLoadReport(total, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private <T> Future<?> submit(ExecutorService executor, Semaphore permits, AtomicReference<Throwable> failure,
+                                 Table<T> table, List<T> batch) {
+        return executor.submit(() -> {
+            try {
+                if (mode == BulkLoadMode.COPY) {
+                    copyIn(table, batch);
+                } else {
+                    insertBatch(table, batch);
+                }
+                return null;
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    //каждая пачка - отдельный COPY в собственной транзакции; при ошибке COPY отменяется и строки пачки не фиксируются
+    private <T> void copyIn(Table<T> table, List<T> batch) throws SQLException, IOException {
+        var sql = "copy " + table.name + " (" + String.join(", ", table.columns) + ") from stdin";
+        try (var connection = dataSource.getConnection()) {
+            var copy = new PGCopyOutputStream(connection.unwrap(PGConnection.class), sql, COPY_BUFFER_SIZE);
+            try {
+                var writer = new BufferedWriter(new OutputStreamWriter(copy, StandardCharsets.UTF_8), COPY_BUFFER_SIZE);
+                for (var row : batch) {
+                    writeCopyRow(writer, table, row);
+                }
+                writer.flush();
+                copy.endCopy();
+            } finally {
+                if (copy.isActive()) {
+                    copy.cancelCopy();
+                }
+            }
+        }
+    }
+
+    private static <T> void writeCopyRow(Writer writer, Table<T> table, T row) throws IOException {
+        for (var i = 0; i < table.getters.size(); i++) {
+            if (i > 0) {
+                writer.write('\t');
+            }
+            var value = table.getters.get(i).apply(row);
+            //в текстовом формате COPY null передается как \N, а не строкой "null"
+            if (value == null) {
+                writer.write("\\N");
+            } else {
+                escapeCopyText(writer, String.valueOf(value));
+            }
+        }
+        writer.write('\n');
+    }
+
+    private static void escapeCopyText(Writer writer, String value) throws IOException {
+        for (var i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            switch (c) {
+                case '\\' -> writer.write("\\\\");
+                case '\t' -> writer.write("\\t");
+                case '\n' -> writer.write("\\n");
+                case '\r' -> writer.write("\\r");
+                default -> writer.write(c);
+            }
+        }
+    }
+
+    //пачка вставляется в одной транзакции запросами insert ... values (?, ?, ?), (?, ?, ?), ...,
+    //строк в запросе не больше, чем позволяет ограничение на число параметров
+    private <T> void insertBatch(Table<T> table, List<T> batch) throws SQLException {
+        var columns = table.columns.size();
+        var rowsPerStatement = Math.min(batch.size(), MAX_PARAMETERS / columns);
+        try (var connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                for (var from = 0; from < batch.size(); from += rowsPerStatement) {
+                    var to = Math.min(batch.size(), from + rowsPerStatement);
+                    try (var insert = connection.prepareStatement(insertSql(table, to - from))) {
+                        var index = 1;
+                        for (var i = from; i < to; i++) {
+                            for (var getter : table.getters) {
+                                insert.setObject(index++, getter.apply(batch.get(i)));
+                            }
+                        }
+                        insert.executeUpdate();
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static String insertSql(Table<?> table, int rows) {
+        var placeholders = "(" + String.join(", ", Collections.nCopies(table.columns.size(), "?")) + ")";
+        var sql = new StringBuilder("insert into " + table.name + " (" + String.join(", ", table.columns) + ") values ");
+        for (var i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "" : ", ").append(placeholders);
+        }
+        return sql.toString();
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        var interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <T> Iterator<T> lines(BufferedReader reader, Function<String[], T> parser) {
+        return new Iterator<>() {
+            private String next = readLine();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public T next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                var line = next;
+                next = readLine();
+                return parser.apply(line.split(",", 3));
+            }
+
+            private String readLine() {
+                try {
+                    return reader.readLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    @RequiredArgsConstructor
+    private static class Table<T> {
+        private final String name;
+        private final List<String> columns;
+        private final List<Function<T, Object>> getters;
+    }
+}
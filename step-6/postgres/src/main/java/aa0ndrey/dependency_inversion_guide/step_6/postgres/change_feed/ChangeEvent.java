@@ -0,0 +1,15 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.UUID;
+
+//version - значение столбца version строки после изменения, оно растет при каждом update
+@Data
+@AllArgsConstructor
+public class ChangeEvent {
+    private ChangeTable table;
+    private UUID id;
+    private long version;
+}
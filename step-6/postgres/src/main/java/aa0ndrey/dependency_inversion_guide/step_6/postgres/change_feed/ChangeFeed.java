@@ -0,0 +1,5 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed;
+
+public interface ChangeFeed {
+    void subscribe(ChangeListener listener);
+}
@@ -0,0 +1,8 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed;
+
+public interface ChangeListener {
+    void onChange(ChangeEvent event);
+
+    //события могли быть потеряны, например при переподключении LISTEN, поэтому все кешированное считается устаревшим
+    void onReset();
+}
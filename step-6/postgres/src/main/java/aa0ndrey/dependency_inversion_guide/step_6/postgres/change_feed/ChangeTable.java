@@ -0,0 +1,6 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed;
+
+public enum ChangeTable {
+    USER,
+    PRODUCT
+}
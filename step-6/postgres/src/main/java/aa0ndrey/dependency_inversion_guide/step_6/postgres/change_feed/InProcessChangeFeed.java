@@ -0,0 +1,26 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+//заменяет PostgresChangeFeed, когда изменения публикуются тем же процессом, события доставляются синхронно
+public class InProcessChangeFeed implements ChangeFeed {
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void subscribe(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void publish(ChangeEvent event) {
+        for (var listener : listeners) {
+            listener.onChange(event);
+        }
+    }
+
+    public void reset() {
+        for (var listener : listeners) {
+            listener.onReset();
+        }
+    }
+}
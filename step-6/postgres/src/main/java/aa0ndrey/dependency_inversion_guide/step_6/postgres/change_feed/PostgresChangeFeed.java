@@ -0,0 +1,58 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+//изменения приходят через LISTEN/NOTIFY, уведомления отправляют триггеры на insert, update и delete;
+//удаление публикуется с версией old.version + 1, чтобы оно было новее любой закешированной строки:
+//create function notify_change() returns trigger as $$ begin
+//    if tg_op = 'DELETE' then perform pg_notify(tg_argv[0], old.id || ':' || (old.version + 1)); return old; end if;
+//    perform pg_notify(tg_argv[0], new.id || ':' || new.version); return new;
+//end $$ language plpgsql;
+//create trigger user_changes after insert or update or delete on user
+//    for each row execute function notify_change('user_changes');
+//create trigger product_changes after insert or update or delete on product
+//    for each row execute function notify_change('product_changes');
+//NOTIFY отправляется при commit, поэтому подписчик не увидит версию, которой еще нет в таблице
+public class PostgresChangeFeed implements ChangeFeed {
+    static final String USER_CHANNEL = "user_changes";
+    static final String PRODUCT_CHANNEL = "product_changes";
+
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void subscribe(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void start() {
+        //реализация отдельного соединения с listen user_changes; listen product_changes;
+        //и потока, который ждет уведомления (PGConnection.getNotifications с таймаутом) и передает их в dispatch;
+        //после каждого переподключения вызывается reset, так как пропущенные уведомления не доставляются повторно
+        throw new UnsupportedOperationException();
+    }
+
+    void dispatch(String channel, String payload) {
+        var separator = payload.indexOf(':');
+        var table = switch (channel) {
+            case USER_CHANNEL -> ChangeTable.USER;
+            case PRODUCT_CHANNEL -> ChangeTable.PRODUCT;
+            default -> throw new IllegalArgumentException("Неизвестный канал: " + channel);
+        };
+        var event = new ChangeEvent(
+                table,
+                UUID.fromString(payload.substring(0, separator)),
+                Long.parseLong(payload.substring(separator + 1))
+        );
+        for (var listener : listeners) {
+            listener.onChange(event);
+        }
+    }
+
+    void reset() {
+        for (var listener : listeners) {
+            listener.onReset();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class Versioned<T> {
+    private T value;
+    private long version;
+}
@@ -0,0 +1,17 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.deadline;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+
+public class StatementTimeout {
+    //set local не принимает параметры, а set_config с is_local = true так же действует до конца транзакции;
+    //вне явной транзакции запрос отправляется одним сообщением с основным, чтобы оба выполнились в одной неявной
+    public static final String SQL = "select set_config('statement_timeout', ?, true)";
+
+    //значение для SQL в миллисекундах, где "0" означает отсутствие ограничения
+    public static String value(Deadline deadline) {
+        if (deadline.isNever()) {
+            return "0";
+        }
+        return Long.toString(Math.max(1, deadline.remaining().toMillis()));
+    }
+}
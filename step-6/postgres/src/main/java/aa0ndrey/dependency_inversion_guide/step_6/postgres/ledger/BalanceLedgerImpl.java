@@ -0,0 +1,52 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.ledger;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//баланс не изменяется на месте: списания и пополнения только добавляются в balance_ledger,
+//поэтому заказы одного пользователя не конкурируют за одну строку user
+public class BalanceLedgerImpl {
+    private static final System.Logger LOGGER = System.getLogger(BalanceLedgerImpl.class.getName());
+
+    //списание вставляется, только если баланс с учетом списания не становится отрицательным;
+    //блокировки по пользователю нет: транзакция заказа выполняется с serializable, и из двух одновременных списаний
+    //одного пользователя, прочитавших один и тот же хвост журнала, второе завершается ошибкой сериализации (40001),
+    //а не ждет первое, поэтому заказы разных пользователей и непересекающиеся заказы одного не блокируют друг друга
+    private static final String DEBIT = "insert into balance_ledger (user_id, amount, order_id) select ?, ?, ? "
+            + "where (select u.balance + coalesce(s.amount, 0) "
+            + "+ coalesce((select sum(l.amount) from balance_ledger l where l.user_id = u.id and not l.snapshotted), 0) "
+            + "from user u left join balance_snapshot s on s.user_id = u.id where u.id = ?) + ? >= 0";
+
+    //строка добавляется в транзакцию заказа transactionId, чтобы списание фиксировалось только вместе с заказом;
+    //транзакция должна быть начата TransactionManagerImpl.beginSerializable
+    public void append(long transactionId, UUID userId, long amount, UUID orderId, Deadline deadline) {
+        deadline.check();
+        //реализация на соединении транзакции transactionId: для списания (amount < 0) DEBIT,
+        //для пополнения insert into balance_ledger (user_id, amount, order_id) values (?, ?, ?);
+        //если DEBIT не вставил строку, то RuntimeException("Недостаточно средств"), и транзакция откатывается в onError
+        throw new UnsupportedOperationException();
+    }
+
+    public void startSnapshots(ScheduledExecutorService executor, long period, TimeUnit unit) {
+        executor.scheduleWithFixedDelay(this::materializeSnapshots, period, period, unit);
+    }
+
+    //снимок ограничивает хвост журнала, который нужно просуммировать при чтении баланса;
+    //граница по bigserial не годится: строка с меньшим id может зафиксироваться позже снимка и потеряться,
+    //поэтому в снимок переносятся только уже зафиксированные строки, и каждая помечается snapshotted
+    public void materializeSnapshots() {
+        try {
+            //реализация одним запросом, чтобы пометка строк и изменение снимка были видны читателям атомарно:
+            //with moved as (update balance_ledger set snapshotted = true where not snapshotted returning user_id, amount)
+            //insert into balance_snapshot (user_id, amount) select user_id, sum(amount) from moved group by user_id
+            //on conflict (user_id) do update set amount = balance_snapshot.amount + excluded.amount
+            //для выборки используется частичный индекс balance_ledger (user_id) where not snapshotted
+        } catch (RuntimeException e) {
+            //исключение отменило бы все следующие запуски scheduleWithFixedDelay, хвост журнала просто дождется следующего запуска
+            LOGGER.log(System.Logger.Level.ERROR, "Не удалось перенести журнал баланса в снимок", e);
+        }
+    }
+}
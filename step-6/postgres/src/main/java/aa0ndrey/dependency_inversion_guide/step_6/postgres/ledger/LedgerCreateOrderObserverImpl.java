@@ -0,0 +1,51 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.ledger;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.ContextKey;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderContext;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderObserver;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.order.OrderRepositoryImpl;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.product.ProductRepositoryImpl;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.transaction_manager.TransactionManagerImpl;
+import lombok.RequiredArgsConstructor;
+
+//заменяет CreateOrderObserverImpl в режиме журнала баланса: вставка заказа и списание выполняются в одной транзакции,
+//поэтому заказ без списания или списание без заказа не фиксируются
+@RequiredArgsConstructor
+public class LedgerCreateOrderObserverImpl implements CreateOrderObserver {
+    private static final ContextKey<Long> TRANSACTION_ID = new ContextKey<>("transaction-id");
+    private final TransactionManagerImpl transactionManagerImpl;
+    private final LedgerUserRepositoryImpl userRepository;
+    private final ProductRepositoryImpl productRepository;
+    private final OrderRepositoryImpl orderRepository;
+    private final BalanceLedgerImpl ledger;
+
+    @Override
+    public void onStart(CreateOrderContext context) {
+        var request = context.getRequest();
+        var deadline = request.getDeadline();
+        deadline.check();
+        context.put(TRANSACTION_ID, transactionManagerImpl.beginSerializable(deadline));
+        context.setUser(userRepository.find(request.getUserId(), deadline));
+        context.setProduct(productRepository.find(request.getProductId(), deadline));
+    }
+
+    @Override
+    public void onEnd(CreateOrderContext context) {
+        var deadline = context.getRequest().getDeadline();
+        var transactionId = context.get(TRANSACTION_ID);
+        var order = orderRepository.create(context.getCreatedOrder(), deadline);
+        var amount = (long) context.getProductPrice() * order.getQuantity();
+        ledger.append(transactionId, order.getUserId(), -amount, order.getId(), deadline);
+        transactionManagerImpl.commit(context.remove(TRANSACTION_ID));
+        context.setCreatedOrder(order);
+    }
+
+    //списание не зафиксировано, пока не зафиксирован заказ, поэтому откат транзакции отменяет оба
+    @Override
+    public void onError(CreateOrderContext context, Throwable error) {
+        var transactionId = context.remove(TRANSACTION_ID);
+        if (transactionId != null) {
+            transactionManagerImpl.rollback(transactionId);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.ledger;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.pipeline.Pipeline;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.user.UserRepositoryImpl;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+//User.balance вычисляется как снимок плюс еще не перенесенные в снимок строки журнала, поэтому OrderService проверяет тот же баланс
+public class LedgerUserRepositoryImpl extends UserRepositoryImpl {
+    //balance_snapshot.amount - сумма строк журнала, уже перенесенных в снимок (snapshotted = true)
+    private static final String FIND = "select u.id, u.name, u.balance + coalesce(s.amount, 0) "
+            + "+ coalesce((select sum(l.amount) from balance_ledger l "
+            + "where l.user_id = u.id and not l.snapshotted), 0) as balance "
+            + "from user u left join balance_snapshot s on s.user_id = u.id where u.id = ?";
+
+    @Override
+    public User find(UUID id) {
+        return find(id, Deadline.NEVER);
+    }
+
+    @Override
+    public User find(UUID id, Deadline deadline) {
+        deadline.check();
+        //реализация StatementTimeout.SQL, если вызов не внутри транзакции из TransactionManagerImpl.begin(deadline), и FIND
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CompletableFuture<User> find(UUID id, Pipeline pipeline) {
+        return pipeline.enqueue(FIND, id);
+    }
+}
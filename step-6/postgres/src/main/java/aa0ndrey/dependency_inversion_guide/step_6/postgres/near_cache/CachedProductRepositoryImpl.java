@@ -0,0 +1,78 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.near_cache;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed.ChangeEvent;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed.ChangeFeed;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed.ChangeListener;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed.ChangeTable;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed.Versioned;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.pipeline.Pipeline;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.product.ProductRepositoryImpl;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+//кеш может отставать от таблицы на время доставки события, поэтому он используется только через findVersioned,
+//а заказ создается условной вставкой с версией, по которой проверялась цена
+public class CachedProductRepositoryImpl extends ProductRepositoryImpl implements ChangeListener {
+    private final ProductRepositoryImpl source;
+    private final NearCache<Product> cache;
+
+    public CachedProductRepositoryImpl(ProductRepositoryImpl source, ChangeFeed changeFeed, int maxSize) {
+        this.source = source;
+        this.cache = new NearCache<>(maxSize, product -> new Product(product.getId(), product.getTitle(), product.getPrice()));
+        changeFeed.subscribe(this);
+    }
+
+    //чтения без версии идут мимо кеша: без условной вставки устаревшее значение прошло бы проверку в OrderService
+    @Override
+    public Product find(UUID id) {
+        return source.find(id);
+    }
+
+    @Override
+    public Product find(UUID id, Deadline deadline) {
+        return source.find(id, deadline);
+    }
+
+    @Override
+    public CompletableFuture<Product> find(UUID id, Pipeline pipeline) {
+        return source.find(id, pipeline);
+    }
+
+    @Override
+    public List<Product> findAll(Collection<UUID> ids, Deadline deadline) {
+        return source.findAll(ids, deadline);
+    }
+
+    @Override
+    public void findAll(Consumer<Product> consumer) {
+        source.findAll(consumer);
+    }
+
+    @Override
+    public Versioned<Product> findVersioned(UUID id, Deadline deadline) {
+        deadline.check();
+        return cache.get(id, deadline, key -> source.findVersioned(key, deadline));
+    }
+
+    public void invalidate(UUID id) {
+        cache.invalidate(id);
+    }
+
+    @Override
+    public void onChange(ChangeEvent event) {
+        if (event.getTable() == ChangeTable.PRODUCT) {
+            cache.onChange(event.getId(), event.getVersion());
+        }
+    }
+
+    @Override
+    public void onReset() {
+        cache.invalidateAll();
+    }
+}
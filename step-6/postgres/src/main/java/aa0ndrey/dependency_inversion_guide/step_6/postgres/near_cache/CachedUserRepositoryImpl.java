@@ -0,0 +1,65 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.near_cache;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed.ChangeEvent;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed.ChangeFeed;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed.ChangeListener;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed.ChangeTable;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed.Versioned;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.pipeline.Pipeline;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.user.UserRepositoryImpl;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+//кеш может отставать от таблицы на время доставки события, поэтому он используется только через findVersioned,
+//а заказ создается условной вставкой с версией, по которой проверялся баланс
+public class CachedUserRepositoryImpl extends UserRepositoryImpl implements ChangeListener {
+    private final UserRepositoryImpl source;
+    private final NearCache<User> cache;
+
+    public CachedUserRepositoryImpl(UserRepositoryImpl source, ChangeFeed changeFeed, int maxSize) {
+        this.source = source;
+        this.cache = new NearCache<>(maxSize, user -> new User(user.getId(), user.getName(), user.getBalance()));
+        changeFeed.subscribe(this);
+    }
+
+    //чтения без версии идут мимо кеша: без условной вставки устаревшее значение прошло бы проверку в OrderService
+    @Override
+    public User find(UUID id) {
+        return source.find(id);
+    }
+
+    @Override
+    public User find(UUID id, Deadline deadline) {
+        return source.find(id, deadline);
+    }
+
+    @Override
+    public CompletableFuture<User> find(UUID id, Pipeline pipeline) {
+        return source.find(id, pipeline);
+    }
+
+    @Override
+    public Versioned<User> findVersioned(UUID id, Deadline deadline) {
+        deadline.check();
+        return cache.get(id, deadline, key -> source.findVersioned(key, deadline));
+    }
+
+    public void invalidate(UUID id) {
+        cache.invalidate(id);
+    }
+
+    @Override
+    public void onChange(ChangeEvent event) {
+        if (event.getTable() == ChangeTable.USER) {
+            cache.onChange(event.getId(), event.getVersion());
+        }
+    }
+
+    @Override
+    public void onReset() {
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,134 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.near_cache;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed.Versioned;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+//записи живут без TTL и заменяются по событиям изменений;
+//событие по закешированному ключу оставляет отметку с новой версией, событие по загружаемому ключу
+//поднимает минимальную версию загрузки, поэтому загрузка, начатая до события, не положит в кеш старую строку;
+//события по остальным ключам ничего не сохраняют, и размер кеша ограничен maxSize;
+//значения изменяемы, поэтому наружу отдаются копии, а закешированный экземпляр не покидает кеш
+public class NearCache<T> {
+    private final int maxSize;
+    private final UnaryOperator<T> copy;
+    private final Map<UUID, Versioned<T>> entries = new ConcurrentHashMap<>();
+    //одна загрузка на ключ, остальные читатели ждут ее результат
+    private final Map<UUID, Load<T>> loads = new ConcurrentHashMap<>();
+
+    public NearCache(int maxSize, UnaryOperator<T> copy) {
+        this.maxSize = maxSize;
+        this.copy = copy;
+    }
+
+    //возвращает null, если строки нет
+    public Versioned<T> get(UUID id, Deadline deadline, Function<UUID, Versioned<T>> loader) {
+        var entry = entries.get(id);
+        if (entry != null && entry.getValue() != null) {
+            return copyOf(entry);
+        }
+
+        var load = new Load<T>();
+        var existing = loads.putIfAbsent(id, load);
+        if (existing != null) {
+            return copyOf(await(existing, deadline));
+        }
+
+        try {
+            var loaded = loader.apply(id);
+            if (loaded != null) {
+                store(id, loaded, load);
+            }
+            load.result.complete(loaded);
+            return copyOf(loaded);
+        } catch (Throwable e) {
+            load.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(id, load);
+        }
+    }
+
+    //минимальная версия загрузки поднимается до обработки записи: store, не увидевший новую минимальную версию,
+    //успеет положить запись до computeIfPresent, и она будет заменена отметкой
+    public void onChange(UUID id, long version) {
+        var load = loads.get(id);
+        if (load != null) {
+            load.raiseMinVersion(version);
+        }
+        entries.computeIfPresent(id, (key, current) -> current.getVersion() >= version
+                ? current
+                : new Versioned<>(null, version));
+    }
+
+    public void invalidate(UUID id) {
+        entries.remove(id);
+    }
+
+    public void invalidateAll() {
+        loads.values().forEach(load -> load.raiseMinVersion(Long.MAX_VALUE));
+        entries.clear();
+    }
+
+    private void store(UUID id, Versioned<T> loaded, Load<T> load) {
+        if (loaded.getVersion() < load.minVersion) {
+            return;
+        }
+        if (!entries.containsKey(id) && entries.size() >= maxSize) {
+            //вытесняется произвольная запись, частые ключи быстро вернутся в кеш
+            var iterator = entries.keySet().iterator();
+            if (iterator.hasNext()) {
+                entries.remove(iterator.next());
+            }
+        }
+        //минимальная версия перечитывается под блокировкой записи, которую берет и onChange
+        entries.compute(id, (key, current) -> {
+            if (loaded.getVersion() < load.minVersion) {
+                return current;
+            }
+            return current == null || current.getVersion() <= loaded.getVersion() ? loaded : current;
+        });
+    }
+
+    private Versioned<T> copyOf(Versioned<T> versioned) {
+        return versioned != null ? new Versioned<>(copy.apply(versioned.getValue()), versioned.getVersion()) : null;
+    }
+
+    private Versioned<T> await(Load<T> load, Deadline deadline) {
+        try {
+            return load.result.get(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Истек срок выполнения запроса");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static class Load<T> {
+        private final CompletableFuture<Versioned<T>> result = new CompletableFuture<>();
+        private volatile long minVersion;
+
+        synchronized void raiseMinVersion(long version) {
+            minVersion = Math.max(minVersion, version);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.near_cache;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.ContextKey;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderContext;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderObserver;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.order.OrderRepositoryImpl;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.transaction_manager.TransactionManagerImpl;
+import lombok.RequiredArgsConstructor;
+
+@RequiredArgsConstructor
+public class NearCacheCreateOrderObserverImpl implements CreateOrderObserver {
+    private static final ContextKey<Long> TRANSACTION_ID = new ContextKey<>("transaction-id");
+    private static final ContextKey<Long> USER_VERSION = new ContextKey<>("user-version");
+    private static final ContextKey<Long> PRODUCT_VERSION = new ContextKey<>("product-version");
+    private final TransactionManagerImpl transactionManagerImpl;
+    private final CachedUserRepositoryImpl userRepository;
+    private final CachedProductRepositoryImpl productRepository;
+    private final OrderRepositoryImpl orderRepository;
+
+    @Override
+    public void onStart(CreateOrderContext context) {
+        var request = context.getRequest();
+        var deadline = request.getDeadline();
+        deadline.check();
+        context.put(TRANSACTION_ID, transactionManagerImpl.begin(deadline));
+
+        var user = userRepository.findVersioned(request.getUserId(), deadline);
+        if (user == null) {
+            throw new RuntimeException("Пользователь не найден");
+        }
+        var product = productRepository.findVersioned(request.getProductId(), deadline);
+        if (product == null) {
+            throw new RuntimeException("Товар не найден");
+        }
+        context.put(USER_VERSION, user.getVersion());
+        context.put(PRODUCT_VERSION, product.getVersion());
+        context.setUser(user.getValue());
+        context.setProduct(product.getValue());
+    }
+
+    @Override
+    public void onEnd(CreateOrderContext context) {
+        var request = context.getRequest();
+        var transactionId = context.get(TRANSACTION_ID);
+        //проверка версий выполняется в той же транзакции, что и вставка, фиксация - только после успешной вставки
+        var order = orderRepository.createIfUnchanged(
+                context.getCreatedOrder(),
+                context.get(USER_VERSION),
+                context.get(PRODUCT_VERSION),
+                request.getDeadline()
+        );
+        //id убирается из контекста до фиксации или отката, чтобы onError не завершал транзакцию повторно
+        context.remove(TRANSACTION_ID);
+        if (order == null) {
+            transactionManagerImpl.rollback(transactionId);
+            //событие изменения еще не дошло, поэтому устаревшие записи сбрасываются сразу
+            userRepository.invalidate(request.getUserId());
+            productRepository.invalidate(request.getProductId());
+            throw new RuntimeException("Баланс пользователя или цена товара изменились, повторите запрос");
+        }
+        transactionManagerImpl.commit(transactionId);
+        context.setCreatedOrder(order);
+    }
+
+    //транзакция не фиксировалась и откатывается сразу, а не дожидается сборщика брошенных транзакций
+    @Override
+    public void onError(CreateOrderContext context, Throwable error) {
+        var transactionId = context.remove(TRANSACTION_ID);
+        if (transactionId != null) {
+            transactionManagerImpl.rollback(transactionId);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.order;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CartItem;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.ContextKey;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateCartOrderContext;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateCartOrderObserver;
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.product.ProductRepositoryImpl;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.transaction_manager.TransactionManagerImpl;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.user.UserRepositoryImpl;
+import lombok.RequiredArgsConstructor;
+
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@RequiredArgsConstructor
+public class CreateCartOrderObserverImpl implements CreateCartOrderObserver {
+    private static final ContextKey<Long> TRANSACTION_ID = new ContextKey<>("transaction-id");
+    private final TransactionManagerImpl transactionManagerImpl;
+    private final UserRepositoryImpl userRepository;
+    private final ProductRepositoryImpl productRepository;
+    private final OrderRepositoryImpl orderRepository;
+
+    @Override
+    public void onStart(CreateCartOrderContext context) {
+        var request = context.getRequest();
+        var deadline = request.getDeadline();
+        deadline.check();
+        context.put(TRANSACTION_ID, transactionManagerImpl.begin(deadline));
+        context.setUser(userRepository.find(request.getUserId(), deadline));
+
+        //цены всех товаров корзины запрашиваются за один round-trip
+        var productIds = request.getItems().stream().map(CartItem::getProductId).collect(Collectors.toSet());
+        context.setProducts(productRepository.findAll(productIds, deadline).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity())));
+    }
+
+    @Override
+    public void onEnd(CreateCartOrderContext context) {
+        //заказы вставляются в той же транзакции, в которой проверялись баланс и цены
+        orderRepository.createAll(context.getCreatedOrders(), context.getRequest().getDeadline());
+        transactionManagerImpl.commit(context.remove(TRANSACTION_ID));
+    }
+
+    //транзакция не фиксировалась и откатывается сразу, а не дожидается сборщика брошенных транзакций
+    @Override
+    public void onError(CreateCartOrderContext context, Throwable error) {
+        var transactionId = context.remove(TRANSACTION_ID);
+        if (transactionId != null) {
+            transactionManagerImpl.rollback(transactionId);
+        }
+    }
+}
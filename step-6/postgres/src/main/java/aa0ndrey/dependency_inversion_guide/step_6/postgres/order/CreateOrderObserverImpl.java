@@ -1,31 +1,77 @@
 package aa0ndrey.dependency_inversion_guide.step_6.postgres.order;
 
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.ContextKey;
 import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderContext;
 import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderObserver;
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
 import aa0ndrey.dependency_inversion_guide.step_6.postgres.product.ProductRepositoryImpl;
 import aa0ndrey.dependency_inversion_guide.step_6.postgres.transaction_manager.TransactionManagerImpl;
 import aa0ndrey.dependency_inversion_guide.step_6.postgres.user.UserRepositoryImpl;
 import lombok.RequiredArgsConstructor;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
 @RequiredArgsConstructor
 public class CreateOrderObserverImpl implements CreateOrderObserver {
+    private static final ContextKey<Long> TRANSACTION_ID = new ContextKey<>("transaction-id");
+    private static final ContextKey<Product> PREFETCHED_PRODUCT = new ContextKey<>("prefetched-product");
     private final TransactionManagerImpl transactionManagerImpl;
-    private final ThreadLocal<Long> transactionId = new ThreadLocal<>();
     private final UserRepositoryImpl userRepository;
     private final ProductRepositoryImpl productRepository;
     private final OrderRepositoryImpl orderRepository;
 
+    //товары допускают устаревание, поэтому для пачки из StagedOrderService они читаются одним запросом до транзакций;
+    //пользователь с балансом по-прежнему читается внутри транзакции заказа
+    @Override
+    public void prefetch(List<CreateOrderContext> contexts) {
+        var productIds = new HashSet<UUID>();
+        Deadline deadline = null;
+        for (var context : contexts) {
+            var request = context.getRequest();
+            productIds.add(request.getProductId());
+            if (deadline == null || request.getDeadline().remaining().compareTo(deadline.remaining()) < 0) {
+                deadline = request.getDeadline();
+            }
+        }
+        var products = new HashMap<UUID, Product>();
+        for (var product : productRepository.findAll(productIds, deadline)) {
+            products.put(product.getId(), product);
+        }
+        for (var context : contexts) {
+            var product = products.get(context.getRequest().getProductId());
+            if (product != null) {
+                context.put(PREFETCHED_PRODUCT, product);
+            }
+        }
+    }
+
     @Override
     public void onStart(CreateOrderContext context) {
-        transactionId.set(transactionManagerImpl.begin());
         var request = context.getRequest();
-        context.setUser(userRepository.find(request.getUserId()));
-        context.setProduct(productRepository.find(request.getProductId()));
+        var deadline = request.getDeadline();
+        deadline.check();
+        context.put(TRANSACTION_ID, transactionManagerImpl.begin(deadline));
+        context.setUser(userRepository.find(request.getUserId(), deadline));
+        var product = context.remove(PREFETCHED_PRODUCT);
+        context.setProduct(product != null ? product : productRepository.find(request.getProductId(), deadline));
     }
 
     @Override
     public void onEnd(CreateOrderContext context) {
-        transactionManagerImpl.commit(transactionId.get());
-        orderRepository.create(context.getCreatedOrder());
+        context.setCreatedOrder(orderRepository.create(context.getCreatedOrder(), context.getRequest().getDeadline()));
+        transactionManagerImpl.commit(context.remove(TRANSACTION_ID));
+    }
+
+    //транзакция не фиксировалась и откатывается сразу, а не дожидается сборщика брошенных транзакций
+    @Override
+    public void onError(CreateOrderContext context, Throwable error) {
+        var transactionId = context.remove(TRANSACTION_ID);
+        if (transactionId != null) {
+            transactionManagerImpl.rollback(transactionId);
+        }
     }
 }
@@ -0,0 +1,16 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.order;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.Order;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+public class OrderPage {
+    private List<Order> orders;
+    //id последнего заказа страницы для запроса следующей страницы, null если страница последняя
+    private UUID nextAfter;
+}
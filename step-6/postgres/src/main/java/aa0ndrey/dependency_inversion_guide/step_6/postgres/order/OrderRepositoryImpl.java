@@ -1,9 +1,216 @@
 package aa0ndrey.dependency_inversion_guide.step_6.postgres.order;
 
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
 import aa0ndrey.dependency_inversion_guide.step_6.core.order.Order;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.deadline.StatementTimeout;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.pipeline.Pipeline;
+import lombok.RequiredArgsConstructor;
 
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+//если вызов внутри транзакции из TransactionManagerImpl, dataSource возвращает соединение этой транзакции
+//(как TransactionAwareDataSourceProxy: autocommit выключен, а close не завершает транзакцию) и срок уже задан в begin;
+//иначе запрос выполняется в собственной транзакции вместе с StatementTimeout.SQL
+@RequiredArgsConstructor
 public class OrderRepositoryImpl {
+    private static final String COLUMNS = "id, user_id, product_id, idempotency_key, quantity";
+    //на order.idempotency_key создан unique constraint, поэтому повторная вставка возвращает ранее созданный заказ
+    private static final String INSERT = "insert into \"order\" (" + COLUMNS + ") values (?, ?, ?, ?, ?) "
+            + "on conflict (idempotency_key) do update set idempotency_key = excluded.idempotency_key returning " + COLUMNS;
+    private static final String INSERT_IF_UNCHANGED = "insert into \"order\" (" + COLUMNS + ") select ?, ?, ?, ?, ? "
+            + "where exists (select 1 from \"user\" where id = ? and version = ?) "
+            + "and exists (select 1 from product where id = ? and version = ?) "
+            + "on conflict (idempotency_key) do update set idempotency_key = excluded.idempotency_key returning " + COLUMNS;
+    //первая и следующие страницы - разные запросы: условие (? is null or id > ?) не позволило бы искать по индексу
+    private static final String FIRST_PAGE = "select " + COLUMNS + " from \"order\" where user_id = ? order by id limit ?";
+    private static final String NEXT_PAGE = "select " + COLUMNS + " from \"order\" where user_id = ? and id > ? "
+            + "order by id limit ?";
+    private static final String EXPORT = "select " + COLUMNS + " from \"order\" order by id";
+    private static final int EXPORT_FETCH_SIZE = 1000;
+
+    private final DataSource dataSource;
+
     public void create(Order order) {
-        //реализация insert into order (id, user_id, product_id) values (?, ?, ?)
+        create(order, Deadline.NEVER);
+    }
+
+    public Order create(Order order, Deadline deadline) {
+        return execute(deadline, connection -> {
+            try (var insert = connection.prepareStatement(INSERT)) {
+                bind(insert, order);
+                return single(insert);
+            }
+        });
+    }
+
+    //заказ вставляется, только если пользователь и товар не менялись после чтения версий,
+    //иначе возвращается null и проверку баланса нужно повторить по актуальным данным
+    public Order createIfUnchanged(Order order, long userVersion, long productVersion, Deadline deadline) {
+        return execute(deadline, connection -> {
+            try (var insert = connection.prepareStatement(INSERT_IF_UNCHANGED)) {
+                bind(insert, order);
+                insert.setObject(6, order.getUserId());
+                insert.setLong(7, userVersion);
+                insert.setObject(8, order.getProductId());
+                insert.setLong(9, productVersion);
+                return single(insert);
+            }
+        });
+    }
+
+    //все заказы вставляются одним запросом
+    public void createAll(List<Order> orders, Deadline deadline) {
+        if (orders.isEmpty()) {
+            deadline.check();
+            return;
+        }
+        var sql = new StringBuilder("insert into \"order\" (" + COLUMNS + ") values ");
+        for (var i = 0; i < orders.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?)");
+        }
+        execute(deadline, connection -> {
+            try (var insert = connection.prepareStatement(sql.toString())) {
+                for (var i = 0; i < orders.size(); i++) {
+                    var order = orders.get(i);
+                    insert.setObject(i * 5 + 1, order.getId());
+                    insert.setObject(i * 5 + 2, order.getUserId());
+                    insert.setObject(i * 5 + 3, order.getProductId());
+                    insert.setObject(i * 5 + 4, order.getIdempotencyKey());
+                    insert.setInt(i * 5 + 5, order.getQuantity());
+                }
+                return insert.executeUpdate();
+            }
+        });
+    }
+
+    public CompletableFuture<Order> create(Order order, Pipeline pipeline) {
+        return pipeline.enqueue(
+                INSERT,
+                order.getId(), order.getUserId(), order.getProductId(), order.getIdempotencyKey(), order.getQuantity()
+        );
+    }
+
+    //id заказов упорядочены по времени создания, поэтому страница ищется по индексу (user_id, id) без offset;
+    //заказы, созданные до OrderIdGenerator, имеют случайные UUID версии 4 и оказываются среди новых в произвольных местах:
+    //каждый заказ по-прежнему попадает ровно в одну страницу, так как порядок по id полный,
+    //но хронологическим он остается только для id версии 7
+    public OrderPage findByUserId(UUID userId, UUID after, int limit, Deadline deadline) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Размер страницы должен быть положительным");
+        }
+        return execute(deadline, connection -> {
+            try (var select = connection.prepareStatement(after == null ? FIRST_PAGE : NEXT_PAGE)) {
+                var index = 1;
+                select.setObject(index++, userId);
+                if (after != null) {
+                    select.setObject(index++, after);
+                }
+                select.setInt(index, limit);
+                var orders = new ArrayList<Order>(limit);
+                try (var rows = select.executeQuery()) {
+                    while (rows.next()) {
+                        orders.add(map(rows));
+                    }
+                }
+                var nextAfter = orders.size() == limit ? orders.get(orders.size() - 1).getId() : null;
+                return new OrderPage(orders, nextAfter);
+            }
+        });
+    }
+
+    //строки читаются курсором на сервере пачками по EXPORT_FETCH_SIZE и сразу пишутся в output,
+    //поэтому память не зависит от числа заказов
+    public void export(OutputStream output) throws IOException {
+        var writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        writer.write("id,user_id,product_id,quantity\n");
+        try (var connection = dataSource.getConnection()) {
+            //без явной транзакции драйвер postgres игнорирует fetch size и читает результат в память целиком
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            try (var select = connection.prepareStatement(EXPORT, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                select.setFetchSize(EXPORT_FETCH_SIZE);
+                try (var rows = select.executeQuery()) {
+                    while (rows.next()) {
+                        writer.write(rows.getObject(1, UUID.class) + "," + rows.getObject(2, UUID.class) + ","
+                                + rows.getObject(3, UUID.class) + "," + rows.getInt(5) + "\n");
+                    }
+                }
+                connection.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось выгрузить заказы", e);
+        }
+        writer.flush();
+    }
+
+    private <T> T execute(Deadline deadline, Query<T> query) {
+        deadline.check();
+        try (var connection = dataSource.getConnection()) {
+            if (!connection.getAutoCommit()) {
+                return query.execute(connection);
+            }
+            connection.setAutoCommit(false);
+            try {
+                try (var timeout = connection.prepareStatement(StatementTimeout.SQL)) {
+                    timeout.setString(1, StatementTimeout.value(deadline));
+                    timeout.execute();
+                }
+                var result = query.execute(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Ошибка выполнения запроса к заказам", e);
+        }
+    }
+
+    private static void bind(PreparedStatement insert, Order order) throws SQLException {
+        insert.setObject(1, order.getId());
+        insert.setObject(2, order.getUserId());
+        insert.setObject(3, order.getProductId());
+        insert.setObject(4, order.getIdempotencyKey());
+        insert.setInt(5, order.getQuantity());
+    }
+
+    //null, если insert не вставил строку
+    private static Order single(PreparedStatement insert) throws SQLException {
+        try (var rows = insert.executeQuery()) {
+            return rows.next() ? map(rows) : null;
+        }
+    }
+
+    private static Order map(ResultSet rows) throws SQLException {
+        return new Order(
+                rows.getObject(1, UUID.class),
+                rows.getObject(2, UUID.class),
+                rows.getObject(3, UUID.class),
+                rows.getObject(4, UUID.class),
+                rows.getInt(5)
+        );
+    }
+
+    private interface Query<T> {
+        T execute(Connection connection) throws SQLException;
     }
 }
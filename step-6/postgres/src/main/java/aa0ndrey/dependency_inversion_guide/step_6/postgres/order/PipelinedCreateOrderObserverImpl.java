@@ -0,0 +1,75 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.order;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.ContextKey;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderContext;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderObserver;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.pipeline.Pipeline;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.pipeline.PipelineConnection;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.product.ProductRepositoryImpl;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.transaction_manager.TransactionManagerImpl;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.user.UserRepositoryImpl;
+import lombok.RequiredArgsConstructor;
+
+import java.util.function.Supplier;
+
+@RequiredArgsConstructor
+public class PipelinedCreateOrderObserverImpl implements CreateOrderObserver {
+    private static final ContextKey<Long> TRANSACTION_ID = new ContextKey<>("transaction-id");
+    private static final ContextKey<PipelineConnection> CONNECTION = new ContextKey<>("connection");
+    //пул соединений, onStart и onEnd одной транзакции выполняются на одном соединении
+    private final Supplier<PipelineConnection> connections;
+    private final TransactionManagerImpl transactionManagerImpl;
+    private final UserRepositoryImpl userRepository;
+    private final ProductRepositoryImpl productRepository;
+    private final OrderRepositoryImpl orderRepository;
+
+    @Override
+    public void onStart(CreateOrderContext context) {
+        //begin, select из user и select из product не зависят друг от друга и отправляются за один round-trip
+        var request = context.getRequest();
+        var deadline = request.getDeadline();
+        deadline.check();
+        var connection = connections.get();
+        context.put(CONNECTION, connection);
+        var pipeline = new Pipeline(connection);
+        context.put(TRANSACTION_ID, transactionManagerImpl.begin(pipeline, deadline));
+        var user = userRepository.find(request.getUserId(), pipeline);
+        var product = productRepository.find(request.getProductId(), pipeline, deadline);
+        pipeline.sync();
+
+        context.setUser(user.join());
+        context.setProduct(product.join());
+    }
+
+    @Override
+    public void onEnd(CreateOrderContext context) {
+        //insert into order и commit отправляются за один round-trip
+        var deadline = context.getRequest().getDeadline();
+        deadline.check();
+        var connection = context.remove(CONNECTION);
+        var pipeline = new Pipeline(connection);
+        var order = orderRepository.create(context.getCreatedOrder(), pipeline);
+        transactionManagerImpl.commit(context.remove(TRANSACTION_ID), pipeline);
+        try {
+            pipeline.sync();
+        } finally {
+            //после неудачного commit сервер уже откатил транзакцию, поэтому соединение возвращается в пул в любом случае
+            connection.close();
+        }
+
+        context.setCreatedOrder(order.join());
+    }
+
+    //транзакция не фиксировалась и откатывается сразу, а не дожидается сборщика брошенных транзакций
+    @Override
+    public void onError(CreateOrderContext context, Throwable error) {
+        //rollback возвращает соединение транзакции в пул
+        var connection = context.remove(CONNECTION);
+        var transactionId = context.remove(TRANSACTION_ID);
+        if (transactionId != null) {
+            transactionManagerImpl.rollback(transactionId);
+        } else if (connection != null) {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.pipeline;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@RequiredArgsConstructor
+public class Pipeline {
+    @Getter
+    private final PipelineConnection connection;
+    private final List<PipelineStatement> statements = new ArrayList<>();
+    private final List<CompletableFuture<Object>> pending = new ArrayList<>();
+
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> enqueue(String sql, Object... parameters) {
+        var result = new CompletableFuture<Object>();
+        statements.add(new PipelineStatement(sql, parameters));
+        pending.add(result);
+        return (CompletableFuture<T>) result;
+    }
+
+    //все накопленные запросы отправляются за один round-trip, результаты завершаются в порядке постановки в очередь;
+    //если хотя бы один запрос упал, sync бросает первую ошибку, иначе, например, неудачный commit остался бы незамеченным
+    public void sync() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        var statements = List.copyOf(this.statements);
+        var results = List.copyOf(pending);
+        this.statements.clear();
+        pending.clear();
+
+        List<Object> responses;
+        try {
+            responses = connection.roundTrip(statements);
+            if (responses.size() != results.size()) {
+                throw new IllegalStateException("Число ответов не совпадает с числом запросов");
+            }
+        } catch (RuntimeException | Error e) {
+            results.forEach(result -> result.completeExceptionally(e));
+            throw e;
+        }
+
+        RuntimeException failure = null;
+        for (var i = 0; i < results.size(); i++) {
+            var response = responses.get(i);
+            if (response instanceof Throwable) {
+                results.get(i).completeExceptionally((Throwable) response);
+                if (failure == null) {
+                    failure = response instanceof RuntimeException
+                            ? (RuntimeException) response
+                            : new RuntimeException("Ошибка выполнения запроса", (Throwable) response);
+                }
+            } else {
+                results.get(i).complete(response);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
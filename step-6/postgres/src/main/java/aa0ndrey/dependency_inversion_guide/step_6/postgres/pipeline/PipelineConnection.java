@@ -0,0 +1,14 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.pipeline;
+
+import java.util.List;
+
+//соединение из пула, на котором запросы отправляются пачкой Parse/Bind/Execute с одним Sync в конце
+public interface PipelineConnection extends AutoCloseable {
+    //один round-trip: ответы возвращаются в порядке запросов, на месте упавшего запроса возвращается Throwable,
+    //а запросы после него сервер пропускает до Sync, и на их месте тоже возвращается Throwable
+    List<Object> roundTrip(List<PipelineStatement> statements);
+
+    //возврат соединения в пул
+    @Override
+    void close();
+}
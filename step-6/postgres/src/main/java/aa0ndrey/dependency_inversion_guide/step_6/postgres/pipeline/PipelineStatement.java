@@ -0,0 +1,11 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.pipeline;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class PipelineStatement {
+    private final String sql;
+    private final Object[] parameters;
+}
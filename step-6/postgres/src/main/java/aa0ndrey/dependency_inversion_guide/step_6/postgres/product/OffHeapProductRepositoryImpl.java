@@ -0,0 +1,124 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.product;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.pipeline.Pipeline;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+//читатели не берут блокировок: снимок перестраивается в фоне и публикуется одной записью в volatile поле;
+//снимков два: перестройка пишет в вытесненный предыдущей публикацией, поэтому буферы вне кучи не выделяются заново,
+//а читатель, попавший на перезаписываемый снимок, повторяет чтение по опубликованному
+public class OffHeapProductRepositoryImpl extends ProductRepositoryImpl {
+    private static final System.Logger LOGGER = System.getLogger(OffHeapProductRepositoryImpl.class.getName());
+
+    private final ProductRepositoryImpl source;
+    private volatile ProductCatalogSnapshot snapshot = new ProductCatalogSnapshot();
+    //доступен только перестройке
+    private ProductCatalogSnapshot spare = new ProductCatalogSnapshot();
+    private volatile long lastRebuildNanos = System.nanoTime();
+
+    public OffHeapProductRepositoryImpl(ProductRepositoryImpl source) {
+        this.source = source;
+    }
+
+    public void start(ScheduledExecutorService executor, long period, TimeUnit unit) {
+        executor.scheduleWithFixedDelay(this::rebuild, 0, period, unit);
+    }
+
+    //ошибка перестройки не должна отменять следующие запуски scheduleWithFixedDelay,
+    //до следующей успешной перестройки обслуживается прежний снимок;
+    //строки пишутся в снимок по мере чтения курсора, полный список товаров в куче не собирается
+    public synchronized void rebuild() {
+        try {
+            var target = spare;
+            target.beginRewrite();
+            source.findAll(target::add);
+            target.endRewrite();
+            spare = snapshot;
+            snapshot = target;
+            lastRebuildNanos = System.nanoTime();
+        } catch (RuntimeException e) {
+            LOGGER.log(System.Logger.Level.ERROR, "Не удалось перестроить снимок каталога товаров", e);
+        }
+    }
+
+    //время с последней успешной перестройки, по нему мониторинг замечает устаревший снимок
+    public Duration getSnapshotAge() {
+        return Duration.ofNanos(System.nanoTime() - lastRebuildNanos);
+    }
+
+    @Override
+    public Product find(UUID id) {
+        return find(id, Deadline.NEVER);
+    }
+
+    //для проверки баланса достаточно цены, поэтому название не декодируется
+    @Override
+    public Product find(UUID id, Deadline deadline) {
+        var product = lookup(id, false);
+        //товар, добавленный после последней перестройки снимка, читается из таблицы
+        return product != null ? product : source.find(id, deadline);
+    }
+
+    @Override
+    public List<Product> findAll(Collection<UUID> ids, Deadline deadline) {
+        var products = new ArrayList<Product>(ids.size());
+        var missing = new ArrayList<UUID>();
+        for (var id : ids) {
+            var product = lookup(id, false);
+            if (product != null) {
+                products.add(product);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            products.addAll(source.findAll(missing, deadline));
+        }
+        return products;
+    }
+
+    @Override
+    public CompletableFuture<Product> find(UUID id, Pipeline pipeline) {
+        var product = lookup(id, false);
+        return product != null ? CompletableFuture.completedFuture(product) : source.find(id, pipeline);
+    }
+
+    @Override
+    public void findAll(Consumer<Product> consumer) {
+        source.findAll(consumer);
+    }
+
+    public Product findWithTitle(UUID id) {
+        var product = lookup(id, true);
+        return product != null ? product : source.find(id);
+    }
+
+    private Product lookup(UUID id, boolean withTitle) {
+        while (true) {
+            var current = snapshot;
+            var generation = current.readGeneration();
+            Product product;
+            try {
+                product = current.find(id, withTitle);
+            } catch (RuntimeException e) {
+                if (current.isUnchanged(generation)) {
+                    throw e;
+                }
+                continue;
+            }
+            if (current.isUnchanged(generation)) {
+                return product;
+            }
+        }
+    }
+}
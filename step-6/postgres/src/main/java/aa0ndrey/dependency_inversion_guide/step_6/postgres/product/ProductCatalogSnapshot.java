@@ -0,0 +1,172 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.product;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+//снимок таблицы product вне кучи: хеш-таблица с открытой адресацией по UUID и отдельная область названий;
+//буферы переиспользуются следующими перестройками, а строки добавляются по одной прямо из курсора;
+//перезапись меняет поколение, поэтому читатель, успевший взять ссылку на перезаписываемый снимок,
+//по readGeneration и isUnchanged узнает, что прочитанное недействительно
+public class ProductCatalogSnapshot {
+    //слот: id.msb (8), id.lsb (8), price (4), смещение названия + 1 (4), где 0 означает пустой слот
+    private static final int SLOT_SIZE = 24;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int INITIAL_TITLES_SIZE = 1024;
+
+    private ByteBuffer index;
+    private ByteBuffer titles;
+    private int mask;
+    private int size;
+    private int titlesEnd;
+    //нечетное значение - снимок перезаписывается
+    private volatile long generation;
+
+    public ProductCatalogSnapshot() {
+        index = ByteBuffer.allocateDirect(INITIAL_CAPACITY * SLOT_SIZE);
+        titles = ByteBuffer.allocateDirect(INITIAL_TITLES_SIZE);
+        mask = INITIAL_CAPACITY - 1;
+    }
+
+    public void beginRewrite() {
+        //после неудачной перестройки снимок остается в состоянии перезаписи
+        if ((generation & 1) == 0) {
+            generation = generation + 1;
+        }
+        for (var position = 0; position < index.capacity(); position += Long.BYTES) {
+            index.putLong(position, 0);
+        }
+        size = 0;
+        titlesEnd = 0;
+    }
+
+    public void add(Product product) {
+        if ((long) (size + 1) * 2 > mask + 1L) {
+            resizeIndex((long) (mask + 1) * 2);
+        }
+        var titleOffset = appendTitle(product.getTitle());
+        insert(product.getId().getMostSignificantBits(), product.getId().getLeastSignificantBits(), product.getPrice(), titleOffset + 1);
+        size++;
+    }
+
+    public void endRewrite() {
+        generation = generation + 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    //отрицательное значение, если снимок перезаписывается
+    public long readGeneration() {
+        var current = generation;
+        return (current & 1) == 0 ? current : -1;
+    }
+
+    //true, если с readGeneration снимок не перезаписывался и прочитанному можно верить
+    public boolean isUnchanged(long readGeneration) {
+        VarHandle.acquireFence();
+        return readGeneration >= 0 && generation == readGeneration;
+    }
+
+    //название декодируется только при withTitle, иначе из снимка читается только цена;
+    //при одновременной перезаписи может вернуть мусор или бросить исключение, см. isUnchanged
+    public Product find(UUID id, boolean withTitle) {
+        var currentIndex = index;
+        var currentMask = mask;
+        var msb = id.getMostSignificantBits();
+        var lsb = id.getLeastSignificantBits();
+        var slot = hash(msb, lsb) & currentMask;
+        for (var probes = 0; probes <= currentMask; probes++) {
+            var position = slot * SLOT_SIZE;
+            var titleOffset = currentIndex.getInt(position + 20);
+            if (titleOffset == 0) {
+                return null;
+            }
+            if (currentIndex.getLong(position) == msb && currentIndex.getLong(position + 8) == lsb) {
+                var price = currentIndex.getInt(position + 16);
+                return new Product(id, withTitle ? title(titleOffset - 1) : null, price);
+            }
+            slot = (slot + 1) & currentMask;
+        }
+        return null;
+    }
+
+    private void insert(long msb, long lsb, int price, int titleReference) {
+        var slot = hash(msb, lsb) & mask;
+        while (index.getInt(slot * SLOT_SIZE + 20) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        var position = slot * SLOT_SIZE;
+        index.putLong(position, msb)
+                .putLong(position + 8, lsb)
+                .putInt(position + 16, price)
+                .putInt(position + 20, titleReference);
+    }
+
+    private void resizeIndex(long capacity) {
+        var previous = index;
+        var previousCapacity = mask + 1;
+        index = ByteBuffer.allocateDirect(checkedSize(capacity * SLOT_SIZE));
+        mask = (int) capacity - 1;
+        for (var slot = 0; slot < previousCapacity; slot++) {
+            var position = slot * SLOT_SIZE;
+            var titleReference = previous.getInt(position + 20);
+            if (titleReference != 0) {
+                insert(previous.getLong(position), previous.getLong(position + 8), previous.getInt(position + 16), titleReference);
+            }
+        }
+    }
+
+    //null-название хранится как длина -1
+    private int appendTitle(String title) {
+        var encoded = title != null ? title.getBytes(StandardCharsets.UTF_8) : null;
+        var required = (long) titlesEnd + Integer.BYTES + (encoded != null ? encoded.length : 0);
+        if (required > titles.capacity()) {
+            var resized = ByteBuffer.allocateDirect(checkedSize(Math.max(required, (long) titles.capacity() * 2)));
+            resized.put(titles.duplicate().position(0).limit(titlesEnd));
+            titles = resized;
+        }
+        var offset = titlesEnd;
+        titles.putInt(offset, encoded != null ? encoded.length : -1);
+        if (encoded != null) {
+            titles.put(offset + Integer.BYTES, encoded);
+        }
+        titlesEnd = (int) required;
+        return offset;
+    }
+
+    private String title(int offset) {
+        var currentTitles = titles;
+        var length = currentTitles.getInt(offset);
+        if (length < 0) {
+            return null;
+        }
+        //длина могла быть прочитана во время перезаписи, массив по ней не выделяется
+        if (length > currentTitles.capacity() - offset - Integer.BYTES) {
+            throw new IndexOutOfBoundsException("Некорректная длина названия: " + length);
+        }
+        var bytes = new byte[length];
+        currentTitles.get(offset + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //размер буфера и смещения в нем ограничены int
+    private static int checkedSize(long size) {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Каталог товаров не помещается в снимок: требуется " + size + " байт");
+        }
+        return (int) size;
+    }
+
+    private static int hash(long msb, long lsb) {
+        var hash = msb ^ lsb;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+}
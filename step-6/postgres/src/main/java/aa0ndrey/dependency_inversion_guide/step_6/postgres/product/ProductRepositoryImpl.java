@@ -1,12 +1,54 @@
 package aa0ndrey.dependency_inversion_guide.step_6.postgres.product;
 
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
 import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed.Versioned;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.pipeline.Pipeline;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public class ProductRepositoryImpl {
     public Product find(UUID id) {
         //реализация select * from product where product.id = ?
         throw new UnsupportedOperationException();
     }
+
+    public Product find(UUID id, Deadline deadline) {
+        deadline.check();
+        //реализация StatementTimeout.SQL, если вызов не внутри транзакции из TransactionManagerImpl.begin(deadline),
+        //и select * from product where product.id = ?
+        throw new UnsupportedOperationException();
+    }
+
+    public List<Product> findAll(Collection<UUID> ids, Deadline deadline) {
+        deadline.check();
+        //реализация StatementTimeout.SQL, если вызов не внутри транзакции из TransactionManagerImpl.begin(deadline),
+        //и select * from product where product.id = any(?)
+        throw new UnsupportedOperationException();
+    }
+
+    public Versioned<Product> findVersioned(UUID id, Deadline deadline) {
+        deadline.check();
+        //реализация StatementTimeout.SQL, если вызов не внутри транзакции из TransactionManagerImpl.begin(deadline),
+        //и select *, product.version from product where product.id = ?, null если строки нет
+        throw new UnsupportedOperationException();
+    }
+
+    public CompletableFuture<Product> find(UUID id, Pipeline pipeline) {
+        return pipeline.enqueue("select * from product where product.id = ?", id);
+    }
+
+    //в конвейере срок уже задан транзакции через StatementTimeout.SQL, он нужен реализациям, читающим не через конвейер
+    public CompletableFuture<Product> find(UUID id, Pipeline pipeline, Deadline deadline) {
+        return find(id, pipeline);
+    }
+
+    public void findAll(Consumer<Product> consumer) {
+        //реализация select * from product через курсор с передачей каждой строки в consumer
+        throw new UnsupportedOperationException();
+    }
 }
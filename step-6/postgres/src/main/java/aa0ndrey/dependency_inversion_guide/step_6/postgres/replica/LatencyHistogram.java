@@ -0,0 +1,34 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.replica;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//гистограмма с корзинами по степеням двойки от наносекунд, точности достаточно для выбора порога хеджирования
+public class LatencyHistogram {
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long latencyNanos) {
+        counts.incrementAndGet(BUCKETS - 1 - Long.numberOfLeadingZeros(Math.max(1, latencyNanos)));
+    }
+
+    public long percentileNanos(double percentile) {
+        var total = 0L;
+        for (var i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return Long.MAX_VALUE;
+        }
+
+        var threshold = (long) Math.ceil(total * percentile);
+        var seen = 0L;
+        for (var i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= threshold) {
+                return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
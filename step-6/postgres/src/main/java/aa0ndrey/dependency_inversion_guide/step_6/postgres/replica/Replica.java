@@ -0,0 +1,61 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.replica;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.product.ProductRepositoryImpl;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+@RequiredArgsConstructor
+public class Replica {
+    private static final double EWMA_WEIGHT = 0.1;
+
+    //репозиторий, подключенный к конкретной реплике
+    private final ProductRepositoryImpl productRepository;
+    @Getter
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    //биты double, обновляются через CAS, чтобы одновременные измерения не терялись
+    private final AtomicLong averageLatencyNanos = new AtomicLong(Double.doubleToLongBits(1));
+
+    public Product find(UUID id, Deadline deadline) {
+        return measure(() -> productRepository.find(id, deadline));
+    }
+
+    public List<Product> findAll(Collection<UUID> ids, Deadline deadline) {
+        return measure(() -> productRepository.findAll(ids, deadline));
+    }
+
+    public void findAll(Consumer<Product> consumer) {
+        productRepository.findAll(consumer);
+    }
+
+    //ожидаемое время ответа с учетом уже выполняющихся на реплике запросов
+    public double getCost() {
+        return (inFlight.get() + 1) * Double.longBitsToDouble(averageLatencyNanos.get());
+    }
+
+    private <T> T measure(Supplier<T> query) {
+        inFlight.incrementAndGet();
+        var start = System.nanoTime();
+        try {
+            return query.get();
+        } finally {
+            var latency = System.nanoTime() - start;
+            latencyHistogram.record(latency);
+            averageLatencyNanos.updateAndGet(bits -> {
+                var average = Double.longBitsToDouble(bits);
+                return Double.doubleToLongBits(average + EWMA_WEIGHT * (latency - average));
+            });
+            inFlight.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.replica;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.pipeline.Pipeline;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.product.ProductRepositoryImpl;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+//товары допускают устаревание, поэтому все чтения идут с реплик, а баланс в UserRepositoryImpl читается с primary
+@RequiredArgsConstructor
+public class ReplicaProductRepositoryImpl extends ProductRepositoryImpl {
+    private static final double HEDGE_PERCENTILE = 0.95;
+
+    private final List<Replica> replicas;
+    //если null, то хеджирование запросов отключено
+    private final ExecutorService hedgeExecutor;
+
+    @Override
+    public Product find(UUID id) {
+        return find(id, Deadline.NEVER);
+    }
+
+    @Override
+    public Product find(UUID id, Deadline deadline) {
+        return hedged(replica -> replica.find(id, deadline), deadline);
+    }
+
+    @Override
+    public List<Product> findAll(Collection<UUID> ids, Deadline deadline) {
+        return hedged(replica -> replica.findAll(ids, deadline), deadline);
+    }
+
+    @Override
+    public CompletableFuture<Product> find(UUID id, Pipeline pipeline) {
+        return find(id, pipeline, Deadline.NEVER);
+    }
+
+    //конвейер привязан к соединению с primary, поэтому товар читается с реплики на вызывающем потоке до pipeline.sync():
+    //round-trip к реплике не совмещается с round-trip к primary, зато не занимает поток hedgeExecutor на все ожидание
+    @Override
+    public CompletableFuture<Product> find(UUID id, Pipeline pipeline, Deadline deadline) {
+        return CompletableFuture.completedFuture(find(id, deadline));
+    }
+
+    @Override
+    public void findAll(Consumer<Product> consumer) {
+        choose(null).findAll(consumer);
+    }
+
+    private <T> T hedged(Function<Replica, T> query, Deadline deadline) {
+        var first = choose(null);
+        if (hedgeExecutor == null || replicas.size() < 2) {
+            return query.apply(first);
+        }
+
+        var firstResult = CompletableFuture.supplyAsync(() -> query.apply(first), hedgeExecutor);
+        try {
+            var hedgeDelay = first.getLatencyHistogram().percentileNanos(HEDGE_PERCENTILE);
+            return firstResult.get(Math.min(hedgeDelay, deadline.remaining().toNanos()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            //медленный или упавший первый запрос дублируется на другую реплику
+            deadline.check();
+            var second = choose(first);
+            var secondResult = CompletableFuture.supplyAsync(() -> query.apply(second), hedgeExecutor);
+            return join(firstSuccessful(firstResult, secondResult), deadline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    //результат первого успешного запроса, ошибка - только если не удались оба
+    private static <T> CompletableFuture<T> firstSuccessful(CompletableFuture<T> first, CompletableFuture<T> second) {
+        var result = new CompletableFuture<T>();
+        var failures = new AtomicInteger();
+        for (var future : List.of(first, second)) {
+            future.whenComplete((value, error) -> {
+                if (error == null) {
+                    result.complete(value);
+                } else if (failures.incrementAndGet() == 2) {
+                    result.completeExceptionally(error);
+                }
+            });
+        }
+        return result;
+    }
+
+    //выбор наименее загруженной из двух случайных реплик
+    private Replica choose(Replica excluded) {
+        var random = ThreadLocalRandom.current();
+        Replica best = null;
+        for (var i = 0; i < 2; i++) {
+            var candidate = replicas.get(random.nextInt(replicas.size()));
+            if (candidate == excluded) {
+                candidate = replicas.get((replicas.indexOf(candidate) + 1) % replicas.size());
+            }
+            if (best == null || candidate.getCost() < best.getCost()) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private static <T> T join(CompletableFuture<T> result, Deadline deadline) {
+        try {
+            return result.get(deadline.remaining().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Истек срок выполнения запроса");
+        } catch (ExecutionException e) {
+            var cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+}
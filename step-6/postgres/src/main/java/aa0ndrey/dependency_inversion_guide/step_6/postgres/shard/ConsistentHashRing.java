@@ -0,0 +1,67 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.shard;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+public class ConsistentHashRing {
+    private final TreeMap<Long, Shard> points = new TreeMap<>();
+    @Getter
+    private final List<Shard> shards;
+
+    public ConsistentHashRing(List<Shard> shards, int virtualNodes) {
+        this.shards = List.copyOf(shards);
+        for (var shard : shards) {
+            for (var i = 0; i < virtualNodes; i++) {
+                var previous = points.put(mix(((long) shard.getName().hashCode() << 32) | i), shard);
+                if (previous != null) {
+                    throw new IllegalArgumentException("Коллизия виртуальных узлов шардов " + previous.getName() + " и " + shard.getName());
+                }
+            }
+        }
+    }
+
+    public Shard route(UUID userId) {
+        return ownerOf(hash(userId));
+    }
+
+    //диапазоны (from, to], которые при переходе на другое кольцо меняют владельца
+    public List<KeyRange> diff(ConsistentHashRing target) {
+        var boundaries = new TreeSet<>(points.keySet());
+        boundaries.addAll(target.points.keySet());
+
+        var ranges = new ArrayList<KeyRange>();
+        var from = boundaries.last();
+        for (var to : boundaries) {
+            var source = ownerOf(to);
+            var destination = target.ownerOf(to);
+            if (source != destination) {
+                ranges.add(new KeyRange(from, to, source, destination));
+            }
+            from = to;
+        }
+        return ranges;
+    }
+
+    Shard ownerOf(long hash) {
+        var entry = points.ceilingEntry(hash);
+        return entry != null ? entry.getValue() : points.firstEntry().getValue();
+    }
+
+    public static long hash(UUID userId) {
+        return mix(userId.getMostSignificantBits() ^ mix(userId.getLeastSignificantBits()));
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,191 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.shard;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+//hash(user_id) вычисляется в приложении, поэтому строки источника читаются потоком целиком и фильтруются по диапазону;
+//запись в приемник выполняется пачками в одной транзакции на диапазон
+public class JdbcShardDataMover implements ShardDataMover {
+    private static final int BATCH_SIZE = 1000;
+    private static final int FETCH_SIZE = 1000;
+
+    private static final String SELECT_USERS = "select id, name, balance from \"user\"";
+    private static final String SELECT_ORDERS = "select id, user_id, product_id, idempotency_key, quantity from \"order\"";
+    private static final String SELECT_PRODUCTS = "select id, title, price from product";
+    //upsert выражен через update и insert, так как синтаксис on conflict есть не во всех базах
+    private static final String UPDATE_USER = "update \"user\" set name = ?, balance = ? where id = ?";
+    private static final String INSERT_USER = "insert into \"user\" (id, name, balance) values (?, ?, ?)";
+    private static final String UPDATE_PRODUCT = "update product set title = ?, price = ? where id = ?";
+    private static final String INSERT_PRODUCT = "insert into product (id, title, price) values (?, ?, ?)";
+    //заказы не изменяются после вставки, поэтому уже скопированный заказ пропускается
+    private static final String INSERT_ORDER = "insert into \"order\" (id, user_id, product_id, idempotency_key, quantity) "
+            + "select ?, ?, ?, ?, ? where not exists (select 1 from \"order\" where id = ?)";
+    private static final String DELETE_ORDERS = "delete from \"order\" where user_id = ?";
+    private static final String DELETE_USER = "delete from \"user\" where id = ?";
+
+    @Override
+    public void copy(KeyRange range) {
+        try (var source = range.getSource().getDataSource().getConnection();
+             var destination = range.getDestination().getDataSource().getConnection()) {
+            //без явной транзакции драйвер postgres игнорирует fetch size и читает результат в память целиком
+            source.setAutoCommit(false);
+            destination.setAutoCommit(false);
+            try {
+                copyUsers(range, source, destination);
+                copyOrders(range, source, destination);
+                destination.commit();
+            } catch (SQLException | RuntimeException e) {
+                destination.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось скопировать диапазон " + range.getFrom() + ".." + range.getTo(), e);
+        }
+    }
+
+    @Override
+    public void delete(KeyRange range) {
+        try (var source = range.getSource().getDataSource().getConnection()) {
+            source.setAutoCommit(false);
+            var userIds = new ArrayList<UUID>();
+            try (var select = stream(source, SELECT_USERS); var rows = select.executeQuery()) {
+                while (rows.next()) {
+                    var id = rows.getObject(1, UUID.class);
+                    if (range.contains(ConsistentHashRing.hash(id))) {
+                        userIds.add(id);
+                    }
+                }
+            }
+            try (var deleteOrders = source.prepareStatement(DELETE_ORDERS);
+                 var deleteUser = source.prepareStatement(DELETE_USER)) {
+                for (var i = 0; i < userIds.size(); i++) {
+                    deleteOrders.setObject(1, userIds.get(i));
+                    deleteOrders.addBatch();
+                    deleteUser.setObject(1, userIds.get(i));
+                    deleteUser.addBatch();
+                    if ((i + 1) % BATCH_SIZE == 0 || i + 1 == userIds.size()) {
+                        deleteOrders.executeBatch();
+                        deleteUser.executeBatch();
+                    }
+                }
+                source.commit();
+            } catch (SQLException | RuntimeException e) {
+                source.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось удалить перенесенный диапазон " + range.getFrom() + ".." + range.getTo(), e);
+        }
+    }
+
+    @Override
+    public void replicateProducts(Shard source, Shard destination) {
+        try (var from = source.getDataSource().getConnection(); var to = destination.getDataSource().getConnection()) {
+            from.setAutoCommit(false);
+            to.setAutoCommit(false);
+            try (var select = stream(from, SELECT_PRODUCTS); var rows = select.executeQuery();
+                 var update = to.prepareStatement(UPDATE_PRODUCT);
+                 var insert = to.prepareStatement(INSERT_PRODUCT)) {
+                var pending = new ArrayList<Object[]>(BATCH_SIZE);
+                while (rows.next()) {
+                    pending.add(new Object[]{rows.getObject(1, UUID.class), rows.getString(2), rows.getInt(3)});
+                    if (pending.size() == BATCH_SIZE) {
+                        upsert(pending, update, insert);
+                    }
+                }
+                upsert(pending, update, insert);
+                to.commit();
+            } catch (SQLException | RuntimeException e) {
+                to.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Не удалось реплицировать товары на шард " + destination.getName(), e);
+        }
+    }
+
+    private void copyUsers(KeyRange range, Connection source, Connection destination) throws SQLException {
+        try (var select = stream(source, SELECT_USERS); var rows = select.executeQuery();
+             var update = destination.prepareStatement(UPDATE_USER);
+             var insert = destination.prepareStatement(INSERT_USER)) {
+            var pending = new ArrayList<Object[]>(BATCH_SIZE);
+            while (rows.next()) {
+                var id = rows.getObject(1, UUID.class);
+                if (range.contains(ConsistentHashRing.hash(id))) {
+                    pending.add(new Object[]{id, rows.getString(2), rows.getInt(3)});
+                    if (pending.size() == BATCH_SIZE) {
+                        upsert(pending, update, insert);
+                    }
+                }
+            }
+            upsert(pending, update, insert);
+        }
+    }
+
+    private void copyOrders(KeyRange range, Connection source, Connection destination) throws SQLException {
+        try (var select = stream(source, SELECT_ORDERS); var rows = select.executeQuery();
+             var insert = destination.prepareStatement(INSERT_ORDER)) {
+            var batched = 0;
+            while (rows.next()) {
+                if (!range.contains(ConsistentHashRing.hash(rows.getObject(2, UUID.class)))) {
+                    continue;
+                }
+                var id = rows.getObject(1, UUID.class);
+                insert.setObject(1, id);
+                insert.setObject(2, rows.getObject(2, UUID.class));
+                insert.setObject(3, rows.getObject(3, UUID.class));
+                insert.setObject(4, rows.getObject(4, UUID.class));
+                insert.setInt(5, rows.getInt(5));
+                insert.setObject(6, id);
+                insert.addBatch();
+                if (++batched == BATCH_SIZE) {
+                    insert.executeBatch();
+                    batched = 0;
+                }
+            }
+            if (batched > 0) {
+                insert.executeBatch();
+            }
+        }
+    }
+
+    //строки в pending имеют вид (id, второе поле, int), сначала обновляются, затем вставляются те, которых не было
+    private static void upsert(List<Object[]> pending, PreparedStatement update, PreparedStatement insert) throws SQLException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        for (var row : pending) {
+            update.setObject(1, row[1]);
+            update.setInt(2, (Integer) row[2]);
+            update.setObject(3, row[0]);
+            update.addBatch();
+        }
+        var updated = update.executeBatch();
+        var inserted = 0;
+        for (var i = 0; i < pending.size(); i++) {
+            if (updated[i] == 0) {
+                var row = pending.get(i);
+                insert.setObject(1, row[0]);
+                insert.setObject(2, row[1]);
+                insert.setInt(3, (Integer) row[2]);
+                insert.addBatch();
+                inserted++;
+            }
+        }
+        if (inserted > 0) {
+            insert.executeBatch();
+        }
+        pending.clear();
+    }
+
+    private static PreparedStatement stream(Connection connection, String sql) throws SQLException {
+        var statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(FETCH_SIZE);
+        return statement;
+    }
+}
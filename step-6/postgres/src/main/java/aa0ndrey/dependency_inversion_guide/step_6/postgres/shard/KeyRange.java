@@ -0,0 +1,19 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.shard;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+//диапазон хешей userId (from, to] на кольце
+@Data
+@AllArgsConstructor
+public class KeyRange {
+    private long from;
+    private long to;
+    private Shard source;
+    private Shard destination;
+
+    //диапазон, проходящий через 0, имеет from >= to
+    public boolean contains(long hash) {
+        return from < to ? hash > from && hash <= to : hash > from || hash <= to;
+    }
+}
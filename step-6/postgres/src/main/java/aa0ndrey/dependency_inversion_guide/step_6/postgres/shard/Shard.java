@@ -0,0 +1,23 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.shard;
+
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.order.OrderRepositoryImpl;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.product.ProductRepositoryImpl;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.transaction_manager.TransactionManagerImpl;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.user.UserRepositoryImpl;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import javax.sql.DataSource;
+
+//все репозитории шарда подключены к его пулу соединений, таблица product реплицирована на каждый шард
+@Data
+@AllArgsConstructor
+public class Shard {
+    private String name;
+    //пул соединений шарда, через него же переносятся строки при смене кольца
+    private DataSource dataSource;
+    private TransactionManagerImpl transactionManagerImpl;
+    private UserRepositoryImpl userRepository;
+    private ProductRepositoryImpl productRepository;
+    private OrderRepositoryImpl orderRepository;
+}
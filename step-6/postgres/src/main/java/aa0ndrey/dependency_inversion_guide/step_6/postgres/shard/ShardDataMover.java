@@ -0,0 +1,14 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.shard;
+
+//перенос строк между шардами при смене кольца
+public interface ShardDataMover {
+    //копирует строки user и order, у которых hash(user_id) попадает в диапазон, из range.source в range.destination;
+    //повторный вызов перезаписывает уже скопированные строки user, поэтому он же служит докопированием после ограждения
+    void copy(KeyRange range);
+
+    //удаляет строки диапазона из range.source, вызывается только после переключения кольца
+    void delete(KeyRange range);
+
+    //таблица product реплицирована на все шарды, поэтому новый шард получает ее полную копию до переноса пользователей
+    void replicateProducts(Shard source, Shard destination);
+}
@@ -0,0 +1,12 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.shard;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+//маршрут удерживается от начала до конца транзакции, чтобы перенос диапазона дождался ее завершения
+@Getter
+@AllArgsConstructor
+public class ShardRoute {
+    private final Shard shard;
+    private final long hash;
+}
@@ -0,0 +1,110 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.shard;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ShardRouter {
+    private volatile ConsistentHashRing ring;
+    //переносимые диапазоны, транзакции по которым ждут окончания переноса
+    private volatile List<KeyRange> fenced = List.of();
+    private volatile CountDownLatch fenceReleased = new CountDownLatch(0);
+    private final Set<ShardRoute> inFlight = ConcurrentHashMap.newKeySet();
+    private final ShardDataMover mover;
+
+    public ShardRouter(ConsistentHashRing ring, ShardDataMover mover) {
+        this.ring = ring;
+        this.mover = mover;
+    }
+
+    public Shard route(UUID userId) {
+        return ring.route(userId);
+    }
+
+    //маршрут для записи: сначала регистрируется, затем проверяется ограждение,
+    //поэтому reshard после установки ограждения увидит все транзакции, которые его не заметили;
+    //кольцо проверяется повторно после регистрации: если reshard целиком прошел между чтением кольца и регистрацией,
+    //ограждения уже нет, а владелец по прочитанному кольцу мог смениться, и запись ушла бы в удаляемый источник
+    public ShardRoute acquire(UUID userId) {
+        var hash = ConsistentHashRing.hash(userId);
+        while (true) {
+            var current = ring;
+            var route = new ShardRoute(current.ownerOf(hash), hash);
+            inFlight.add(route);
+            if (!isFenced(hash) && ring == current) {
+                return route;
+            }
+            inFlight.remove(route);
+            if (!isFenced(hash)) {
+                continue;
+            }
+            try {
+                fenceReleased.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    public void release(ShardRoute route) {
+        inFlight.remove(route);
+    }
+
+    //первое копирование выполняется без остановки записи, затем диапазоны ограждаются,
+    //незавершенные транзакции по ним дожидаются, и повторное копирование переносит все изменения
+    public synchronized void reshard(ConsistentHashRing target, long drainTimeout, TimeUnit unit) {
+        var ranges = ring.diff(target);
+        var productSource = ring.getShards().get(0);
+        for (var shard : target.getShards()) {
+            if (!ring.getShards().contains(shard)) {
+                mover.replicateProducts(productSource, shard);
+            }
+        }
+        ranges.forEach(mover::copy);
+
+        fenceReleased = new CountDownLatch(1);
+        fenced = ranges;
+        try {
+            awaitDrain(ranges, unit.toNanos(drainTimeout));
+            ranges.forEach(mover::copy);
+            ring = target;
+        } finally {
+            fenced = List.of();
+            fenceReleased.countDown();
+        }
+        //после переключения кольца запись в source по этим диапазонам невозможна
+        ranges.forEach(mover::delete);
+    }
+
+    private void awaitDrain(List<KeyRange> ranges, long timeoutNanos) {
+        var deadline = System.nanoTime() + timeoutNanos;
+        while (inFlight.stream().anyMatch(route -> contains(ranges, route.getHash()))) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new RuntimeException("Не удалось дождаться завершения транзакций в переносимых диапазонах");
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private boolean isFenced(long hash) {
+        return contains(fenced, hash);
+    }
+
+    private static boolean contains(List<KeyRange> ranges, long hash) {
+        for (var range : ranges) {
+            if (range.contains(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
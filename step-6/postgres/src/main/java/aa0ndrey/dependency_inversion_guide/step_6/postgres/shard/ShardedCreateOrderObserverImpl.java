@@ -0,0 +1,56 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.shard;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.ContextKey;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderContext;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderObserver;
+import lombok.RequiredArgsConstructor;
+
+@RequiredArgsConstructor
+public class ShardedCreateOrderObserverImpl implements CreateOrderObserver {
+    private static final ContextKey<ShardRoute> SHARD_ROUTE = new ContextKey<>("shard-route");
+    private static final ContextKey<Long> TRANSACTION_ID = new ContextKey<>("transaction-id");
+    private final ShardRouter router;
+
+    @Override
+    public void onStart(CreateOrderContext context) {
+        var request = context.getRequest();
+        var deadline = request.getDeadline();
+        deadline.check();
+        //транзакция ограничена одним шардом, который выбирается по userId;
+        //маршрут удерживается до конца транзакции, чтобы перенос диапазона ее дождался;
+        //при ошибке транзакция откатывается и маршрут освобождается в onError
+        var route = router.acquire(request.getUserId());
+        context.put(SHARD_ROUTE, route);
+        var userShard = route.getShard();
+        context.put(TRANSACTION_ID, userShard.getTransactionManagerImpl().begin(deadline));
+        context.setUser(userShard.getUserRepository().find(request.getUserId(), deadline));
+        context.setProduct(userShard.getProductRepository().find(request.getProductId(), deadline));
+    }
+
+    @Override
+    public void onEnd(CreateOrderContext context) {
+        var userShard = context.get(SHARD_ROUTE).getShard();
+        context.setCreatedOrder(userShard.getOrderRepository().create(
+                context.getCreatedOrder(),
+                context.getRequest().getDeadline()
+        ));
+        userShard.getTransactionManagerImpl().commit(context.remove(TRANSACTION_ID));
+        router.release(context.remove(SHARD_ROUTE));
+    }
+
+    @Override
+    public void onError(CreateOrderContext context, Throwable error) {
+        var route = context.remove(SHARD_ROUTE);
+        if (route == null) {
+            return;
+        }
+        try {
+            var transactionId = context.remove(TRANSACTION_ID);
+            if (transactionId != null) {
+                route.getShard().getTransactionManagerImpl().rollback(transactionId);
+            }
+        } finally {
+            router.release(route);
+        }
+    }
+}
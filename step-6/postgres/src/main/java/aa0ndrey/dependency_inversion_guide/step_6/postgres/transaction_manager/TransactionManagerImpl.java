@@ -1,12 +1,115 @@
 package aa0ndrey.dependency_inversion_guide.step_6.postgres.transaction_manager;
 
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.deadline.StatementTimeout;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.pipeline.Pipeline;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.pipeline.PipelineConnection;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 public class TransactionManagerImpl {
+    private static final int DEFAULT_MAX_TRANSACTIONS = 1024;
+    private static final Duration DEFAULT_MAX_UNBOUNDED_DURATION = Duration.ofMinutes(1);
+
+    private final TransactionRegistry<Transaction> registry;
+    //срок транзакции, начатой без срока запроса (Deadline.NEVER), иначе брошенная транзакция навсегда заняла бы слот
+    private final long maxUnboundedDurationNanos;
+
+    public TransactionManagerImpl() {
+        this(DEFAULT_MAX_TRANSACTIONS);
+    }
+
+    public TransactionManagerImpl(int maxTransactions) {
+        this(maxTransactions, DEFAULT_MAX_UNBOUNDED_DURATION);
+    }
+
+    public TransactionManagerImpl(int maxTransactions, Duration maxUnboundedDuration) {
+        this.registry = new TransactionRegistry<>(maxTransactions);
+        this.maxUnboundedDurationNanos = maxUnboundedDuration.toNanos();
+    }
+
+    //откатывает транзакции, срок которых истек больше grace назад
+    public void startReaper(ScheduledExecutorService executor, long grace, TimeUnit unit) {
+        executor.scheduleWithFixedDelay(
+                () -> registry.reap(unit.toNanos(grace), this::rollback),
+                grace, grace, unit
+        );
+    }
+
     public long begin() {
-        //реализация начала транзакции
-        throw new UnsupportedOperationException();
+        //реализация получения соединения из пула и начала транзакции
+        return registry.register(new Transaction(null), expiresAtNanos(Deadline.NEVER));
+    }
+
+    //ограничение по сроку задается один раз на транзакцию, а не перед каждым запросом
+    public long begin(Deadline deadline) {
+        //реализация получения соединения из пула, begin и StatementTimeout.SQL (StatementTimeout.value(deadline))
+        return registry.register(new Transaction(null), expiresAtNanos(deadline));
+    }
+
+    //уровень изоляции задается в begin, так как set transaction должен выполниться до первого запроса транзакции,
+    //в том числе до StatementTimeout.SQL
+    public long beginSerializable(Deadline deadline) {
+        //реализация получения соединения из пула, begin isolation level serializable
+        //и StatementTimeout.SQL (StatementTimeout.value(deadline))
+        return registry.register(new Transaction(null), expiresAtNanos(deadline));
+    }
+
+    public long begin(Pipeline pipeline, Deadline deadline) {
+        //begin отправляется без ожидания ответа на соединении конвейера
+        pipeline.enqueue("begin");
+        pipeline.enqueue(StatementTimeout.SQL, StatementTimeout.value(deadline));
+        return registry.register(new Transaction(pipeline.getConnection()), expiresAtNanos(deadline));
     }
 
     public void commit(long transactionId) {
-        //реализация фиксации транзакции
+        remove(transactionId);
+        //реализация фиксации транзакции и возврата соединения в пул
+    }
+
+    //соединение возвращает в пул вызывающий после pipeline.sync(), так как до него commit еще не отправлен
+    public void commit(long transactionId, Pipeline pipeline) {
+        remove(transactionId);
+        pipeline.enqueue("commit");
+    }
+
+    public void rollback(long transactionId) {
+        rollback(remove(transactionId));
+    }
+
+    private Transaction remove(long transactionId) {
+        var transaction = registry.remove(transactionId);
+        if (transaction == null) {
+            throw new RuntimeException("Транзакция не найдена или уже завершена");
+        }
+        return transaction;
+    }
+
+    private long expiresAtNanos(Deadline deadline) {
+        return deadline.isNever() ? System.nanoTime() + maxUnboundedDurationNanos : deadline.getExpiresAtNanos();
+    }
+
+    private void rollback(Transaction transaction) {
+        var connection = transaction.connection;
+        if (connection == null) {
+            //реализация отката брошенной транзакции и возврата соединения в пул
+            return;
+        }
+        try {
+            var pipeline = new Pipeline(connection);
+            pipeline.enqueue("rollback");
+            pipeline.sync();
+        } finally {
+            connection.close();
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class Transaction {
+        //соединение из пула, на котором выполняется транзакция, null для транзакций без конвейера
+        private final PipelineConnection connection;
     }
 }
@@ -0,0 +1,117 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.transaction_manager;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+//id транзакции: старшие 32 бита - поколение слота, младшие 32 бита - номер слота
+//поколение увеличивается при освобождении слота, поэтому commit по устаревшему id не найдет чужую транзакцию
+public class TransactionRegistry<T> {
+    private static final int EMPTY = -1;
+
+    private final AtomicReferenceArray<T> states;
+    private final AtomicIntegerArray generations;
+    //момент, после которого транзакция считается брошенной, у свободного слота Long.MAX_VALUE
+    private final AtomicLongArray expiresAtNanos;
+    //стек свободных слотов без блокировок, вершина хранится вместе со счетчиком версий против ABA
+    private final int[] nextFree;
+    private final AtomicLong freeHead;
+
+    public TransactionRegistry(int capacity) {
+        states = new AtomicReferenceArray<>(capacity);
+        generations = new AtomicIntegerArray(capacity);
+        expiresAtNanos = new AtomicLongArray(capacity);
+        nextFree = new int[capacity];
+        for (var i = 0; i < capacity; i++) {
+            expiresAtNanos.set(i, Long.MAX_VALUE);
+            nextFree[i] = i + 1 < capacity ? i + 1 : EMPTY;
+        }
+        freeHead = new AtomicLong(pack(0, capacity > 0 ? 0 : EMPTY));
+    }
+
+    //срок записывается до состояния, поэтому увидевший состояние reap увидит и срок этой же транзакции
+    public long register(T state, long expiresAtNanos) {
+        var slot = pop();
+        if (slot == EMPTY) {
+            throw new RuntimeException("Превышено количество одновременных транзакций");
+        }
+        this.expiresAtNanos.set(slot, expiresAtNanos);
+        states.set(slot, state);
+        return id(generations.get(slot), slot);
+    }
+
+    public T get(long id) {
+        var slot = (int) id;
+        var generation = (int) (id >>> 32);
+        if (generations.get(slot) != generation) {
+            return null;
+        }
+        var state = states.get(slot);
+        return generations.get(slot) == generation ? state : null;
+    }
+
+    public T remove(long id) {
+        var slot = (int) id;
+        var generation = (int) (id >>> 32);
+        if (!generations.compareAndSet(slot, generation, generation + 1)) {
+            return null;
+        }
+        var state = states.getAndSet(slot, null);
+        expiresAtNanos.set(slot, Long.MAX_VALUE);
+        push(slot);
+        return state;
+    }
+
+    //брошенной считается транзакция, срок которой истек больше graceNanos назад: запрос ее уже не завершит;
+    //слот может освободиться и заняться новой транзакцией между чтениями, поэтому срок читается после состояния,
+    //а поколение проверяется повторно: иначе истекший срок прежней транзакции откатил бы новую
+    public void reap(long graceNanos, Consumer<T> onAbandoned) {
+        var now = System.nanoTime();
+        for (var slot = 0; slot < states.length(); slot++) {
+            var generation = generations.get(slot);
+            if (states.get(slot) == null) {
+                continue;
+            }
+            var expiresAt = expiresAtNanos.get(slot);
+            if (expiresAt != Long.MAX_VALUE && now - expiresAt > graceNanos && generations.get(slot) == generation) {
+                var state = remove(id(generation, slot));
+                if (state != null) {
+                    onAbandoned.accept(state);
+                }
+            }
+        }
+    }
+
+    private int pop() {
+        while (true) {
+            var head = freeHead.get();
+            var slot = (int) head;
+            if (slot == EMPTY) {
+                return EMPTY;
+            }
+            if (freeHead.compareAndSet(head, pack((int) (head >>> 32) + 1, nextFree[slot]))) {
+                return slot;
+            }
+        }
+    }
+
+    private void push(int slot) {
+        while (true) {
+            var head = freeHead.get();
+            nextFree[slot] = (int) head;
+            if (freeHead.compareAndSet(head, pack((int) (head >>> 32) + 1, slot))) {
+                return;
+            }
+        }
+    }
+
+    private static long pack(int tag, int slot) {
+        return ((long) tag << 32) | (slot & 0xFFFFFFFFL);
+    }
+
+    private static long id(int generation, int slot) {
+        return ((long) generation << 32) | slot;
+    }
+}
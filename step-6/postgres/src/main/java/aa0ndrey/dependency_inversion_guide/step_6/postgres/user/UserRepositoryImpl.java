@@ -1,12 +1,34 @@
 package aa0ndrey.dependency_inversion_guide.step_6.postgres.user;
 
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
 import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed.Versioned;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.pipeline.Pipeline;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public class UserRepositoryImpl {
     public User find(UUID id) {
         //реализация select * from user where user.id = ?
         throw new UnsupportedOperationException();
     }
+
+    public User find(UUID id, Deadline deadline) {
+        deadline.check();
+        //реализация StatementTimeout.SQL, если вызов не внутри транзакции из TransactionManagerImpl.begin(deadline),
+        //и select * from user where user.id = ?
+        throw new UnsupportedOperationException();
+    }
+
+    public Versioned<User> findVersioned(UUID id, Deadline deadline) {
+        deadline.check();
+        //реализация StatementTimeout.SQL, если вызов не внутри транзакции из TransactionManagerImpl.begin(deadline),
+        //и select *, user.version from user where user.id = ?, null если строки нет
+        throw new UnsupportedOperationException();
+    }
+
+    public CompletableFuture<User> find(UUID id, Pipeline pipeline) {
+        return pipeline.enqueue("select * from user where user.id = ?", id);
+    }
 }
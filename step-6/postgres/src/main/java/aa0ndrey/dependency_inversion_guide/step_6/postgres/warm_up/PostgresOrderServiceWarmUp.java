@@ -0,0 +1,32 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.warm_up;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.OrderService;
+import aa0ndrey.dependency_inversion_guide.step_6.core.warm_up.OrderServiceWarmUp;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.order.CreateOrderObserverImpl;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.transaction_manager.TransactionManagerImpl;
+
+import java.time.Duration;
+import java.util.List;
+
+//граф сервиса тот же, что в работе, но репозитории заменены адаптерами прогрева, поэтому база не нужна;
+//запуск main также служит тренировочным прогоном для создания архива AppCDS:
+//  java -XX:ArchiveClassesAtExit=order-service.jsa -cp <jar-файлы> ...warm_up.PostgresOrderServiceWarmUp
+//после чего приложение запускается с -XX:SharedArchiveFile=order-service.jsa и тем же classpath,
+//причем classpath должен состоять из jar-файлов, так как CDS не архивирует классы из каталогов
+public class PostgresOrderServiceWarmUp {
+    private static final System.Logger LOGGER = System.getLogger(PostgresOrderServiceWarmUp.class.getName());
+
+    public static OrderService createOrderService() {
+        return new OrderService(List.of(new CreateOrderObserverImpl(
+                new TransactionManagerImpl(),
+                new WarmUpUserRepositoryImpl(),
+                new WarmUpProductRepositoryImpl(),
+                new WarmUpOrderRepositoryImpl()
+        )));
+    }
+
+    public static void main(String[] args) {
+        var report = new OrderServiceWarmUp(10_000, 5, Duration.ofSeconds(60)).run(createOrderService());
+        LOGGER.log(System.Logger.Level.INFO, "Прогрев завершен: {0}", report);
+    }
+}
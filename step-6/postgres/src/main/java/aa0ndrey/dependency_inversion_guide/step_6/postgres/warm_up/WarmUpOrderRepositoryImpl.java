@@ -0,0 +1,34 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.warm_up;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.Order;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.order.OrderRepositoryImpl;
+
+import java.util.List;
+
+//заказ считается сохраненным, но никуда не записывается
+public class WarmUpOrderRepositoryImpl extends OrderRepositoryImpl {
+    public WarmUpOrderRepositoryImpl() {
+        super(null);
+    }
+
+    @Override
+    public void create(Order order) {
+    }
+
+    @Override
+    public Order create(Order order, Deadline deadline) {
+        deadline.check();
+        return order;
+    }
+
+    @Override
+    public Order createIfUnchanged(Order order, long userVersion, long productVersion, Deadline deadline) {
+        return create(order, deadline);
+    }
+
+    @Override
+    public void createAll(List<Order> orders, Deadline deadline) {
+        deadline.check();
+    }
+}
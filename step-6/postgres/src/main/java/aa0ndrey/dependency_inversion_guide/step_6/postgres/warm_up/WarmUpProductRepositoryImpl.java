@@ -0,0 +1,40 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.warm_up;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed.Versioned;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.product.ProductRepositoryImpl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+//товар строится из id без обращения к базе
+public class WarmUpProductRepositoryImpl extends ProductRepositoryImpl {
+    @Override
+    public Product find(UUID id) {
+        return new Product(id, "warm-up", 1);
+    }
+
+    @Override
+    public Product find(UUID id, Deadline deadline) {
+        deadline.check();
+        return find(id);
+    }
+
+    @Override
+    public List<Product> findAll(Collection<UUID> ids, Deadline deadline) {
+        deadline.check();
+        var products = new ArrayList<Product>(ids.size());
+        for (var id : ids) {
+            products.add(find(id));
+        }
+        return products;
+    }
+
+    @Override
+    public Versioned<Product> findVersioned(UUID id, Deadline deadline) {
+        return new Versioned<>(find(id, deadline), 0);
+    }
+}
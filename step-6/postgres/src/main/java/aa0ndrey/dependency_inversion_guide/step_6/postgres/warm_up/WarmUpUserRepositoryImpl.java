@@ -0,0 +1,27 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.warm_up;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed.Versioned;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.user.UserRepositoryImpl;
+
+import java.util.UUID;
+
+//пользователь строится из id без обращения к базе, баланса хватает на любой заказ
+public class WarmUpUserRepositoryImpl extends UserRepositoryImpl {
+    @Override
+    public User find(UUID id) {
+        return new User(id, "warm-up", Integer.MAX_VALUE);
+    }
+
+    @Override
+    public User find(UUID id, Deadline deadline) {
+        deadline.check();
+        return find(id);
+    }
+
+    @Override
+    public Versioned<User> findVersioned(UUID id, Deadline deadline) {
+        return new Versioned<>(find(id, deadline), 0);
+    }
+}
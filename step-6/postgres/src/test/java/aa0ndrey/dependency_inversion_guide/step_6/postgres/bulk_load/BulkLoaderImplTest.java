@@ -0,0 +1,160 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.bulk_load;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//встроенная база H2 в памяти не поддерживает COPY, поэтому проверяется режим MULTI_ROW_INSERT
+class BulkLoaderImplTest {
+    private JdbcDataSource dataSource;
+
+    @BeforeEach
+    void createSchema() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:bulk" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        try (var connection = dataSource.getConnection(); var statement = connection.createStatement()) {
+            statement.execute("create table \"user\" (id uuid primary key, name varchar(64), balance int)");
+            statement.execute("create table product (id uuid primary key, title varchar(64), price int)");
+        }
+    }
+
+    @Test
+    void loadsFileInBatchesAcrossPartitions(@TempDir Path directory) throws Exception {
+        var file = directory.resolve("users.csv");
+        var lines = new ArrayList<String>();
+        for (var i = 0; i < 1_000; i++) {
+            lines.add(UUID.randomUUID() + "," + i + ",пользователь, №" + i);
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+
+        var report = new BulkLoaderImpl(dataSource, BulkLoadMode.MULTI_ROW_INSERT, 64, 4).loadUsers(file);
+
+        assertEquals(1_000, report.getRows());
+        assertEquals(1_000, count("\"user\""));
+        assertEquals(499_500, single("select sum(balance) from \"user\""));
+        assertEquals("пользователь, №7", text("select name from \"user\" where balance = 7"));
+    }
+
+    //пачка больше ограничения postgres на число параметров делится на несколько запросов
+    @Test
+    void largeBatchIsSplitByParameterLimit() throws Exception {
+        var products = new ArrayList<Product>();
+        for (var i = 0; i < 25_000; i++) {
+            products.add(new Product(UUID.randomUUID(), i == 0 ? null : "товар", 1));
+        }
+
+        new BulkLoaderImpl(dataSource, BulkLoadMode.MULTI_ROW_INSERT, 25_000, 1).loadProducts(products.iterator());
+
+        assertEquals(25_000, count("product"));
+        assertNull(text("select title from product where id = '" + products.get(0).getId() + "'"));
+    }
+
+    //ошибка чтения строк не возвращается вызывающему, пока отправленные пачки еще пишут в базу
+    @Test
+    void failureWaitsForStartedBatches() {
+        var active = new AtomicInteger();
+        var loader = new BulkLoaderImpl(slow(dataSource, active), BulkLoadMode.MULTI_ROW_INSERT, 10, 2);
+        var rows = new Iterator<User>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public User next() {
+                if (next++ == 15) {
+                    throw new IllegalArgumentException("Некорректная строка");
+                }
+                return new User(UUID.randomUUID(), "user", next);
+            }
+        };
+
+        assertThrows(IllegalArgumentException.class, () -> loader.loadUsers(rows));
+
+        assertEquals(0, active.get());
+        assertEquals(10, count("\"user\""));
+    }
+
+    //соединение выдается с задержкой, которую, как и запрос в драйвере postgres, не прерывает interrupt,
+    //и учитывается как активное до close
+    private static DataSource slow(JdbcDataSource dataSource, AtomicInteger active) {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+            if (!method.getName().equals("getConnection")) {
+                return invoke(method, dataSource, args);
+            }
+            active.incrementAndGet();
+            sleepIgnoringInterrupts(200);
+            var connection = dataSource.getConnection();
+            return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (connectionProxy, connectionMethod, connectionArgs) -> {
+                if (connectionMethod.getName().equals("close")) {
+                    active.decrementAndGet();
+                }
+                return invoke(connectionMethod, connection, connectionArgs);
+            });
+        });
+    }
+
+    private static void sleepIgnoringInterrupts(long millis) {
+        var until = System.nanoTime() + millis * 1_000_000;
+        while (System.nanoTime() - until < 0) {
+            try {
+                Thread.sleep(Math.max(1, (until - System.nanoTime()) / 1_000_000));
+            } catch (InterruptedException e) {
+                //прерывание игнорируется
+            }
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private long count(String table) {
+        return single("select count(*) from " + table);
+    }
+
+    private long single(String sql) {
+        try (var connection = dataSource.getConnection(); var statement = connection.createStatement(); var rows = statement.executeQuery(sql)) {
+            rows.next();
+            return rows.getLong(1);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private String text(String sql) {
+        try (var connection = dataSource.getConnection(); var statement = connection.createStatement(); var rows = statement.executeQuery(sql)) {
+            rows.next();
+            return rows.getString(1);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
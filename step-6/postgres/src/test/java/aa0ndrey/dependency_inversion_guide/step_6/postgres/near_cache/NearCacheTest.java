@@ -0,0 +1,69 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.near_cache;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.change_feed.Versioned;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+class NearCacheTest {
+    @Test
+    void changingReturnedValueDoesNotChangeCache() {
+        var cache = cache();
+        var id = UUID.randomUUID();
+        var loads = new AtomicInteger();
+
+        var first = cache.get(id, Deadline.NEVER, key -> {
+            loads.incrementAndGet();
+            return new Versioned<>(new User(key, "user", 100), 1);
+        });
+        first.getValue().setBalance(0);
+        first.setVersion(5);
+        var second = cache.get(id, Deadline.NEVER, key -> {
+            throw new IllegalStateException("Запись должна браться из кеша");
+        });
+
+        assertEquals(1, loads.get());
+        assertEquals(100, second.getValue().getBalance());
+        assertEquals(1, second.getVersion());
+        assertNotSame(first.getValue(), second.getValue());
+    }
+
+    @Test
+    void loadStartedBeforeChangeIsNotCached() {
+        var cache = cache();
+        var id = UUID.randomUUID();
+
+        //событие приходит, пока загрузка читает строку старой версии
+        var stale = cache.get(id, Deadline.NEVER, key -> {
+            cache.onChange(key, 2);
+            return new Versioned<>(new User(key, "user", 100), 1);
+        });
+        var fresh = cache.get(id, Deadline.NEVER, key -> new Versioned<>(new User(key, "user", 50), 2));
+
+        assertEquals(1, stale.getVersion());
+        assertEquals(2, fresh.getVersion());
+        assertEquals(50, fresh.getValue().getBalance());
+    }
+
+    @Test
+    void changeReplacesCachedEntry() {
+        var cache = cache();
+        var id = UUID.randomUUID();
+        cache.get(id, Deadline.NEVER, key -> new Versioned<>(new User(key, "user", 100), 1));
+
+        cache.onChange(id, 2);
+        var reloaded = cache.get(id, Deadline.NEVER, key -> new Versioned<>(new User(key, "user", 50), 2));
+
+        assertEquals(50, reloaded.getValue().getBalance());
+    }
+
+    private static NearCache<User> cache() {
+        return new NearCache<>(16, user -> new User(user.getId(), user.getName(), user.getBalance()));
+    }
+}
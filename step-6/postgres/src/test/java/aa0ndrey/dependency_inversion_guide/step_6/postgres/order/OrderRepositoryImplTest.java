@@ -0,0 +1,126 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.order;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.Order;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.OrderIdGenerator;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//встроенная база H2 в памяти, set_config postgres подменяется функцией, запоминающей переданный statement_timeout;
+//класс публичный, так как H2 вызывает функцию через отражение
+public class OrderRepositoryImplTest {
+    private static final ConcurrentLinkedQueue<String> STATEMENT_TIMEOUTS = new ConcurrentLinkedQueue<>();
+
+    private JdbcDataSource dataSource;
+    private OrderRepositoryImpl repository;
+
+    public static String setConfig(String name, String value, boolean local) {
+        STATEMENT_TIMEOUTS.add(value);
+        return value;
+    }
+
+    @BeforeEach
+    void createSchema() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:orders" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        try (var connection = dataSource.getConnection(); var statement = connection.createStatement()) {
+            statement.execute("create table \"order\" (id uuid primary key, user_id uuid, product_id uuid, "
+                    + "idempotency_key uuid, quantity int)");
+            statement.execute("create index order_user_id_id on \"order\" (user_id, id)");
+            statement.execute("create alias set_config for \"" + getClass().getName() + ".setConfig\"");
+        }
+        repository = new OrderRepositoryImpl(dataSource);
+        STATEMENT_TIMEOUTS.clear();
+    }
+
+    @Test
+    void pagesCoverEveryOrderOfUserOnceInIdOrder() {
+        var userId = UUID.randomUUID();
+        var created = orders(userId, 25);
+        repository.createAll(created, Deadline.NEVER);
+        repository.createAll(orders(UUID.randomUUID(), 5), Deadline.NEVER);
+
+        var found = new ArrayList<Order>();
+        var pages = 0;
+        UUID after = null;
+        do {
+            var page = repository.findByUserId(userId, after, 10, Deadline.NEVER);
+            found.addAll(page.getOrders());
+            after = page.getNextAfter();
+            pages++;
+        } while (after != null);
+
+        assertEquals(3, pages);
+        assertEquals(sortedById(created), found);
+    }
+
+    @Test
+    void lastFullPageIsFollowedByEmptyPage() {
+        var userId = UUID.randomUUID();
+        repository.createAll(orders(userId, 10), Deadline.NEVER);
+
+        var first = repository.findByUserId(userId, null, 10, Deadline.NEVER);
+        var second = repository.findByUserId(userId, first.getNextAfter(), 10, Deadline.NEVER);
+
+        assertEquals(10, first.getOrders().size());
+        assertEquals(List.of(), second.getOrders());
+        assertNull(second.getNextAfter());
+    }
+
+    @Test
+    void queryOutsideTransactionSetsStatementTimeoutFromDeadline() {
+        repository.findByUserId(UUID.randomUUID(), null, 10, Deadline.NEVER);
+        assertEquals(List.of("0"), List.copyOf(STATEMENT_TIMEOUTS));
+
+        var expired = Deadline.after(Duration.ZERO);
+        assertThrows(RuntimeException.class, () -> repository.findByUserId(UUID.randomUUID(), null, 10, expired));
+    }
+
+    @Test
+    void exportWritesEveryOrderInIdOrder() throws IOException {
+        var created = new ArrayList<Order>();
+        for (var i = 0; i < 5; i++) {
+            var orders = orders(UUID.randomUUID(), 500);
+            repository.createAll(orders, Deadline.NEVER);
+            created.addAll(orders);
+        }
+
+        var output = new ByteArrayOutputStream();
+        repository.export(output);
+
+        var expected = sortedById(created).stream()
+                .map(order -> order.getId() + "," + order.getUserId() + "," + order.getProductId() + "," + order.getQuantity())
+                .collect(Collectors.joining("\n", "id,user_id,product_id,quantity\n", "\n"));
+        assertEquals(expected, output.toString(StandardCharsets.UTF_8));
+    }
+
+    private static List<Order> orders(UUID userId, int count) {
+        var orders = new ArrayList<Order>();
+        for (var i = 0; i < count; i++) {
+            orders.add(new Order(OrderIdGenerator.next(), userId, UUID.randomUUID(), null, i + 1));
+        }
+        return orders;
+    }
+
+    private static List<Order> sortedById(List<Order> orders) {
+        var sorted = new ArrayList<>(orders);
+        sorted.sort((a, b) -> a.getId().toString().compareTo(b.getId().toString()));
+        return sorted;
+    }
+}
@@ -0,0 +1,69 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.pipeline;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+//сервер в том же процессе: каждый round-trip стоит latency, ответы на запросы вычисляет server,
+//после первой ошибки запросы до Sync пропускаются, как в postgres
+class LatencyPipelineConnection implements PipelineConnection {
+    private final Duration latency;
+    private final Function<PipelineStatement, Object> server;
+    private final AtomicInteger roundTrips = new AtomicInteger();
+    private final List<String> executed = new ArrayList<>();
+    private volatile boolean closed;
+
+    LatencyPipelineConnection(Duration latency, Function<PipelineStatement, Object> server) {
+        this.latency = latency;
+        this.server = server;
+    }
+
+    @Override
+    public List<Object> roundTrip(List<PipelineStatement> statements) {
+        if (closed) {
+            throw new IllegalStateException("Соединение возвращено в пул");
+        }
+        roundTrips.incrementAndGet();
+        try {
+            Thread.sleep(latency.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        var responses = new ArrayList<Object>();
+        Throwable failure = null;
+        for (var statement : statements) {
+            if (failure != null) {
+                responses.add(new RuntimeException("Запрос пропущен после ошибки", failure));
+                continue;
+            }
+            executed.add(statement.getSql());
+            try {
+                responses.add(server.apply(statement));
+            } catch (RuntimeException e) {
+                failure = e;
+                responses.add(e);
+            }
+        }
+        return responses;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    int getRoundTrips() {
+        return roundTrips.get();
+    }
+
+    List<String> getExecuted() {
+        return executed;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+}
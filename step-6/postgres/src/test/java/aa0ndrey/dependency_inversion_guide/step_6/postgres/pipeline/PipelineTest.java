@@ -0,0 +1,164 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.pipeline;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderContext;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.CreateOrderRequest;
+import aa0ndrey.dependency_inversion_guide.step_6.core.order.Order;
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.core.user.User;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.order.OrderRepositoryImpl;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.order.PipelinedCreateOrderObserverImpl;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.product.ProductRepositoryImpl;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.transaction_manager.TransactionManagerImpl;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.user.UserRepositoryImpl;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PipelineTest {
+    private static final Duration LATENCY = Duration.ofMillis(20);
+
+    private final User user = new User(UUID.randomUUID(), "user", 100);
+    private final Product product = new Product(UUID.randomUUID(), "product", 10);
+
+    @Test
+    void syncSendsAllStatementsInOneRoundTripAndCompletesResultsInOrder() {
+        var connection = new LatencyPipelineConnection(LATENCY, statement -> statement.getParameters()[0]);
+        var pipeline = new Pipeline(connection);
+
+        var first = pipeline.<Integer>enqueue("select ?", 1);
+        var second = pipeline.<Integer>enqueue("select ?", 2);
+        var third = pipeline.<Integer>enqueue("select ?", 3);
+        pipeline.sync();
+        pipeline.sync();
+
+        assertEquals(1, connection.getRoundTrips());
+        assertEquals(List.of(1, 2, 3), List.of(first.join(), second.join(), third.join()));
+    }
+
+    @Test
+    void failedStatementFailsSyncAndSkipsFollowingStatements() {
+        var failure = new RuntimeException("serialization failure");
+        var connection = new LatencyPipelineConnection(LATENCY, statement -> {
+            if (statement.getSql().equals("commit")) {
+                throw failure;
+            }
+            return statement.getSql();
+        });
+        var pipeline = new Pipeline(connection);
+
+        var insert = pipeline.enqueue("insert");
+        var commit = pipeline.enqueue("commit");
+        var after = pipeline.enqueue("select");
+
+        assertSame(failure, assertThrows(RuntimeException.class, pipeline::sync));
+        assertEquals("insert", insert.join());
+        assertSame(failure, assertThrows(CompletionException.class, commit::join).getCause());
+        assertThrows(CompletionException.class, after::join);
+        assertEquals(List.of("insert", "commit"), connection.getExecuted());
+    }
+
+    @Test
+    void pipelinedOrderTakesTwoRoundTripsInsteadOfOnePerStatement() {
+        var sequential = new LatencyPipelineConnection(LATENCY, server());
+        var sequentialStarted = System.nanoTime();
+        createOrderStatementByStatement(sequential);
+        var sequentialElapsed = System.nanoTime() - sequentialStarted;
+
+        var pipelined = new LatencyPipelineConnection(LATENCY, server());
+        var observer = observer(pipelined);
+        var context = new CreateOrderContext(
+                new CreateOrderRequest(user.getId(), product.getId(), Deadline.after(Duration.ofSeconds(10)), null)
+        );
+        var pipelinedStarted = System.nanoTime();
+        observer.onStart(context);
+        context.setCreatedOrder(new Order(UUID.randomUUID(), user.getId(), product.getId()));
+        observer.onEnd(context);
+        var pipelinedElapsed = System.nanoTime() - pipelinedStarted;
+
+        assertEquals(sequential.getExecuted(), pipelined.getExecuted());
+        assertEquals(6, sequential.getRoundTrips());
+        assertEquals(2, pipelined.getRoundTrips());
+        assertTrue(pipelinedElapsed < sequentialElapsed);
+        assertTrue(sequentialElapsed >= 6 * LATENCY.toNanos());
+        assertEquals(user, context.getUser());
+        assertEquals(product, context.getProduct());
+        assertTrue(pipelined.isClosed());
+    }
+
+    @Test
+    void failedOnStartRollsBackAndReturnsConnection() {
+        var connection = new LatencyPipelineConnection(LATENCY, statement -> {
+            if (statement.getSql().startsWith("select * from product")) {
+                throw new RuntimeException("product lookup failed");
+            }
+            return server().apply(statement);
+        });
+        var observer = observer(connection);
+        var context = new CreateOrderContext(new CreateOrderRequest(user.getId(), product.getId()));
+
+        var error = assertThrows(RuntimeException.class, () -> observer.onStart(context));
+        observer.onError(context, error);
+
+        assertEquals("rollback", connection.getExecuted().get(connection.getExecuted().size() - 1));
+        assertTrue(connection.isClosed());
+    }
+
+    //тот же набор запросов, что и у PipelinedCreateOrderObserverImpl, но с ожиданием ответа на каждый запрос
+    private void createOrderStatementByStatement(PipelineConnection connection) {
+        var pipeline = new Pipeline(connection) {
+            @Override
+            public <T> CompletableFuture<T> enqueue(String sql, Object... parameters) {
+                var result = super.<T>enqueue(sql, parameters);
+                sync();
+                return result;
+            }
+        };
+        var transactionManager = new TransactionManagerImpl();
+        var transactionId = transactionManager.begin(pipeline, Deadline.after(Duration.ofSeconds(10)));
+        new UserRepositoryImpl().find(user.getId(), pipeline);
+        new ProductRepositoryImpl().find(product.getId(), pipeline);
+        new OrderRepositoryImpl(null).create(new Order(UUID.randomUUID(), user.getId(), product.getId()), pipeline);
+        transactionManager.commit(transactionId, pipeline);
+    }
+
+    private PipelinedCreateOrderObserverImpl observer(PipelineConnection connection) {
+        return new PipelinedCreateOrderObserverImpl(
+                () -> connection,
+                new TransactionManagerImpl(),
+                new UserRepositoryImpl(),
+                new ProductRepositoryImpl(),
+                new OrderRepositoryImpl(null)
+        );
+    }
+
+    private Function<PipelineStatement, Object> server() {
+        return statement -> {
+            var sql = statement.getSql();
+            if (sql.startsWith("select * from user")) {
+                return user;
+            }
+            if (sql.startsWith("select * from product")) {
+                return product;
+            }
+            if (sql.startsWith("insert into \"order\"")) {
+                var parameters = statement.getParameters();
+                return new Order(
+                        (UUID) parameters[0], (UUID) parameters[1], (UUID) parameters[2],
+                        (UUID) parameters[3], (Integer) parameters[4]
+                );
+            }
+            return null;
+        };
+    }
+}
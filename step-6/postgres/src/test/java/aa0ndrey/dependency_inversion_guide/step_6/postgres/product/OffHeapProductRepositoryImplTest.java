@@ -0,0 +1,163 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.product;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapProductRepositoryImplTest {
+    @Test
+    void snapshotGrowsWhileStreamingRows() {
+        var source = new CatalogSource(products(5_000, 7));
+        source.products.set(0, new Product(source.products.get(0).getId(), null, 1));
+        source.products.set(1, new Product(source.products.get(1).getId(), "товар №1", 2));
+        var repository = new OffHeapProductRepositoryImpl(source);
+
+        repository.rebuild();
+
+        for (var product : source.products) {
+            var found = repository.findWithTitle(product.getId());
+            assertEquals(product, found);
+            assertNull(repository.find(product.getId(), Deadline.NEVER).getTitle());
+        }
+        assertEquals(0, source.lookups);
+    }
+
+    @Test
+    void rebuildsReuseDirectBuffers() {
+        var source = new CatalogSource(products(2_000, 1));
+        var repository = new OffHeapProductRepositoryImpl(source);
+        //оба снимка дорастают до размера каталога
+        repository.rebuild();
+        repository.rebuild();
+        var before = directBufferCount();
+
+        for (var round = 2; round < 10; round++) {
+            source.products = products(source.products, round);
+            repository.rebuild();
+        }
+
+        assertTrue(directBufferCount() <= before);
+        assertEquals(9, repository.find(source.products.get(0).getId()).getPrice());
+    }
+
+    @Test
+    void failedRebuildKeepsPublishedSnapshot() {
+        var source = new CatalogSource(products(100, 1));
+        var repository = new OffHeapProductRepositoryImpl(source);
+        repository.rebuild();
+        var id = source.products.get(0).getId();
+
+        source.products = products(source.products, 2);
+        source.failAfter = 50;
+        repository.rebuild();
+
+        assertEquals(1, repository.find(id).getPrice());
+    }
+
+    //цена и название каждого товара в одном раунде согласованы: читатель не должен увидеть их из разных снимков
+    @Test
+    void readersSeeConsistentRowsDuringRebuilds() throws InterruptedException {
+        var source = new CatalogSource(products(500, 0));
+        var repository = new OffHeapProductRepositoryImpl(source);
+        repository.rebuild();
+        var stop = new AtomicBoolean();
+        var failure = new AtomicReference<Throwable>();
+
+        var readers = new ArrayList<Thread>();
+        for (var i = 0; i < 2; i++) {
+            var reader = new Thread(() -> {
+                try {
+                    while (!stop.get()) {
+                        for (var product : source.products) {
+                            var found = repository.findWithTitle(product.getId());
+                            assertEquals(found.getTitle(), title(found.getPrice()));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        for (var round = 1; round < 200; round++) {
+            source.products = products(source.products, round);
+            repository.rebuild();
+        }
+        stop.set(true);
+        for (var reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get());
+    }
+
+    private static List<Product> products(int count, int round) {
+        var products = new ArrayList<Product>();
+        for (var i = 0; i < count; i++) {
+            products.add(new Product(UUID.randomUUID(), title(round), round));
+        }
+        return products;
+    }
+
+    private static List<Product> products(List<Product> previous, int round) {
+        var products = new ArrayList<Product>();
+        for (var product : previous) {
+            products.add(new Product(product.getId(), title(round), round));
+        }
+        return products;
+    }
+
+    //длина названия зависит от раунда, чтобы смещения названий менялись между перестройками
+    private static String title(int round) {
+        return "товар-" + "x".repeat(round % 17) + round;
+    }
+
+    private static long directBufferCount() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(it -> it.getName().equals("direct"))
+                .findFirst()
+                .orElseThrow()
+                .getCount();
+    }
+
+    private static class CatalogSource extends ProductRepositoryImpl {
+        private volatile List<Product> products;
+        private int failAfter = -1;
+        private int lookups;
+
+        private CatalogSource(List<Product> products) {
+            this.products = products;
+        }
+
+        @Override
+        public void findAll(Consumer<Product> consumer) {
+            var current = products;
+            for (var i = 0; i < current.size(); i++) {
+                if (i == failAfter) {
+                    throw new RuntimeException("Соединение с базой потеряно");
+                }
+                consumer.accept(current.get(i));
+            }
+        }
+
+        @Override
+        public Product find(UUID id, Deadline deadline) {
+            lookups++;
+            return null;
+        }
+    }
+}
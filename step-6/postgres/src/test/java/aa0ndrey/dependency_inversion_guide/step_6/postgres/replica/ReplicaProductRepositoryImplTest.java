@@ -0,0 +1,126 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.replica;
+
+import aa0ndrey.dependency_inversion_guide.step_6.core.deadline.Deadline;
+import aa0ndrey.dependency_inversion_guide.step_6.core.product.Product;
+import aa0ndrey.dependency_inversion_guide.step_6.postgres.product.ProductRepositoryImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//реплики - заглушки в памяти с настраиваемой задержкой ответа
+class ReplicaProductRepositoryImplTest {
+    private final Product product = new Product(UUID.randomUUID(), "product", 10);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void laggingReplicaReceivesFewerReads() {
+        var first = new LaggingReplica(0);
+        var second = new LaggingReplica(0);
+        var lagging = new LaggingReplica(20);
+        var repository = new ReplicaProductRepositoryImpl(
+                List.of(new Replica(first), new Replica(second), new Replica(lagging)),
+                null
+        );
+
+        for (var i = 0; i < 60; i++) {
+            assertEquals(product, repository.find(product.getId(), Deadline.NEVER));
+        }
+
+        //после первого медленного ответа отстающая реплика выбирается, только если обе случайные пробы попали в нее
+        var fast = first.reads.get() + second.reads.get();
+        assertTrue(fast > 2 * lagging.reads.get(), fast + " / " + lagging.reads);
+    }
+
+    @Test
+    void readSlowerThanP95IsHedgedToAnotherReplica() {
+        var first = new LaggingReplica(0);
+        var second = new LaggingReplica(0);
+        var replicas = List.of(new Replica(first), new Replica(second));
+        for (var replica : replicas) {
+            for (var i = 0; i < 100; i++) {
+                replica.find(product.getId(), Deadline.NEVER);
+            }
+        }
+        var repository = new ReplicaProductRepositoryImpl(replicas, executor);
+
+        //одна реплика отстает, и какую бы из них ни выбрал первый запрос, ответ приходит от второй
+        first.lagMillis = 2_000;
+        for (var i = 0; i < 10; i++) {
+            var start = System.nanoTime();
+            assertEquals(product, repository.find(product.getId(), Deadline.after(Duration.ofSeconds(10))));
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1_000));
+        }
+    }
+
+    @Test
+    void waitForLaggingReplicasEndsAtDeadline() {
+        var replicas = List.of(new Replica(new LaggingReplica(2_000)), new Replica(new LaggingReplica(2_000)));
+        var repository = new ReplicaProductRepositoryImpl(replicas, executor);
+
+        var start = System.nanoTime();
+        var error = assertThrows(
+                RuntimeException.class,
+                () -> repository.find(product.getId(), Deadline.after(Duration.ofMillis(100)))
+        );
+
+        assertEquals("Истек срок выполнения запроса", error.getMessage());
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1_000));
+    }
+
+    @Test
+    void pipelinedFindReadsOnCallerThreadWithRequestDeadline() {
+        var replica = new LaggingReplica(0);
+        var repository = new ReplicaProductRepositoryImpl(List.of(new Replica(replica)), executor);
+
+        var deadline = Deadline.after(Duration.ofSeconds(10));
+        assertEquals(product, repository.find(product.getId(), null, deadline).join());
+        assertSame(Thread.currentThread(), replica.lastThread);
+        assertSame(deadline, replica.lastDeadline);
+
+        var expired = Deadline.after(Duration.ZERO);
+        assertThrows(RuntimeException.class, () -> repository.find(product.getId(), null, expired));
+    }
+
+    private class LaggingReplica extends ProductRepositoryImpl {
+        private final AtomicInteger reads = new AtomicInteger();
+        private volatile long lagMillis;
+        private volatile Thread lastThread;
+        private volatile Deadline lastDeadline;
+
+        LaggingReplica(long lagMillis) {
+            this.lagMillis = lagMillis;
+        }
+
+        @Override
+        public Product find(UUID id, Deadline deadline) {
+            deadline.check();
+            reads.incrementAndGet();
+            lastThread = Thread.currentThread();
+            lastDeadline = deadline;
+            try {
+                Thread.sleep(lagMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            return product;
+        }
+    }
+}
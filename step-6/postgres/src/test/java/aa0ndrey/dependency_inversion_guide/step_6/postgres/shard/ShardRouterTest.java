@@ -0,0 +1,168 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.shard;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//каждый шард - отдельная встроенная база H2 в памяти
+class ShardRouterTest {
+    private static final String SCHEMA = "create table \"user\" (id uuid primary key, name varchar(64), balance int);"
+            + "create table product (id uuid primary key, title varchar(64), price int);"
+            + "create table \"order\" (id uuid primary key, user_id uuid, product_id uuid, idempotency_key uuid, quantity int)";
+
+    @Test
+    void reshardMovesRangesToNewShardAndDeletesThemFromSource() throws SQLException {
+        var a = shard("a");
+        var b = shard("b");
+        var c = shard("c");
+        var router = new ShardRouter(new ConsistentHashRing(List.of(a, b), 16), new JdbcShardDataMover());
+
+        var product = UUID.randomUUID();
+        execute(a, "insert into product (id, title, price) values ('" + product + "', 'product', 10)");
+        var users = new ArrayList<UUID>();
+        for (var i = 0; i < 200; i++) {
+            var user = UUID.randomUUID();
+            users.add(user);
+            var shard = router.route(user);
+            execute(shard, "insert into \"user\" (id, name, balance) values ('" + user + "', 'user', " + i + ")");
+            execute(shard, "insert into \"order\" (id, user_id, product_id, quantity) values ('"
+                    + UUID.randomUUID() + "', '" + user + "', '" + product + "', 1)");
+        }
+
+        var target = new ConsistentHashRing(List.of(a, b, c), 16);
+        router.reshard(target, 1, TimeUnit.SECONDS);
+
+        var moved = 0;
+        for (var i = 0; i < users.size(); i++) {
+            var user = users.get(i);
+            var owner = router.route(user);
+            assertSame(target.route(user), owner);
+            assertEquals(i, count(owner, "select balance from \"user\" where id = '" + user + "'"));
+            assertEquals(1, count(owner, "select count(*) from \"order\" where user_id = '" + user + "'"));
+            for (var shard : List.of(a, b, c)) {
+                if (shard != owner) {
+                    assertEquals(0, count(shard, "select count(*) from \"user\" where id = '" + user + "'"));
+                    assertEquals(0, count(shard, "select count(*) from \"order\" where user_id = '" + user + "'"));
+                }
+            }
+            if (owner == c) {
+                moved++;
+            }
+        }
+        assertTrue(moved > 0);
+        assertEquals(1, count(c, "select count(*) from product"));
+    }
+
+    @Test
+    void writerWaitsForFenceAndThenUsesNewOwner() throws Exception {
+        var a = shard("a");
+        var b = shard("b");
+        var source = new ConsistentHashRing(List.of(a), 16);
+        var target = new ConsistentHashRing(List.of(a, b), 16);
+        var ranges = source.diff(target).size();
+        var fenced = new CountDownLatch(1);
+        var proceed = new CountDownLatch(1);
+        var mover = new ShardDataMover() {
+            private int copies;
+
+            //первый проход копирует все диапазоны без ограждения, повторный начинается под ограждением
+            @Override
+            public void copy(KeyRange range) {
+                if (++copies == ranges + 1) {
+                    fenced.countDown();
+                    try {
+                        proceed.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+
+            @Override
+            public void delete(KeyRange range) {
+            }
+
+            @Override
+            public void replicateProducts(Shard source, Shard destination) {
+            }
+        };
+        var router = new ShardRouter(source, mover);
+        var user = userOwnedBy(target, b);
+
+        var reshard = CompletableFuture.runAsync(() -> router.reshard(target, 5, TimeUnit.SECONDS));
+        assertTrue(fenced.await(5, TimeUnit.SECONDS));
+        var writer = CompletableFuture.supplyAsync(() -> router.acquire(user));
+        Thread.sleep(50);
+        assertFalse(writer.isDone());
+
+        proceed.countDown();
+        var route = writer.get(5, TimeUnit.SECONDS);
+        reshard.get(5, TimeUnit.SECONDS);
+        assertSame(b, route.getShard());
+        router.release(route);
+    }
+
+    @Test
+    void reshardWaitsForTransactionsInMovingRanges() throws Exception {
+        var a = shard("a");
+        var b = shard("b");
+        var mover = new JdbcShardDataMover();
+        var target = new ConsistentHashRing(List.of(a, b), 16);
+        var router = new ShardRouter(new ConsistentHashRing(List.of(a), 16), mover);
+        var route = router.acquire(userOwnedBy(target, b));
+        assertSame(a, route.getShard());
+
+        var reshard = CompletableFuture.runAsync(() -> router.reshard(target, 5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertFalse(reshard.isDone());
+        router.release(route);
+        reshard.get(5, TimeUnit.SECONDS);
+    }
+
+    private static UUID userOwnedBy(ConsistentHashRing ring, Shard shard) {
+        var seen = new HashSet<UUID>();
+        while (true) {
+            var user = UUID.randomUUID();
+            if (seen.add(user) && ring.route(user) == shard) {
+                return user;
+            }
+        }
+    }
+
+    private static Shard shard(String name) throws SQLException {
+        var dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        var shard = new Shard(name, dataSource, null, null, null, null);
+        for (var statement : SCHEMA.split(";")) {
+            execute(shard, statement);
+        }
+        return shard;
+    }
+
+    private static void execute(Shard shard, String sql) throws SQLException {
+        try (var connection = shard.getDataSource().getConnection(); var statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static int count(Shard shard, String sql) throws SQLException {
+        try (var connection = shard.getDataSource().getConnection();
+             var statement = connection.createStatement();
+             var rows = statement.executeQuery(sql)) {
+            return rows.next() ? rows.getInt(1) : -1;
+        }
+    }
+}
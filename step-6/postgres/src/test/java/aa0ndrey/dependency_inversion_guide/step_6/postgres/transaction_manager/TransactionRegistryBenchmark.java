@@ -0,0 +1,76 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.transaction_manager;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.LongUnaryOperator;
+
+//сравнение реестра с synchronized HashMap при 64+ потоках, каждый поток повторяет begin и commit;
+//запуск: java -cp <test-classes>:<classes> ...TransactionRegistryBenchmark [потоков] [секунд]
+public class TransactionRegistryBenchmark {
+    private static final System.Logger LOGGER = System.getLogger(TransactionRegistryBenchmark.class.getName());
+
+    public static void main(String[] args) throws InterruptedException {
+        var threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        var seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        var registry = new TransactionRegistry<Object>(threads * 2);
+        var state = new Object();
+        for (var round = 0; round < 2; round++) {
+            var registryOps = run(threads, seconds,
+                    () -> registry.register(state, Long.MAX_VALUE),
+                    id -> registry.remove(id) == state ? 1 : 0);
+
+            var map = new HashMap<Long, Object>();
+            var nextId = new AtomicLong();
+            var mapOps = run(threads, seconds,
+                    () -> {
+                        var id = nextId.incrementAndGet();
+                        synchronized (map) {
+                            map.put(id, state);
+                        }
+                        return id;
+                    },
+                    id -> {
+                        synchronized (map) {
+                            return map.remove(id) == state ? 1 : 0;
+                        }
+                    });
+
+            //первый раунд - прогрев, результат логируется только для второго
+            if (round == 1) {
+                LOGGER.log(System.Logger.Level.INFO, "Потоков: {0}, операций begin+commit в секунду: "
+                        + "TransactionRegistry {1}, synchronized HashMap {2}", threads, registryOps / seconds, mapOps / seconds);
+            }
+        }
+    }
+
+    private static long run(int threads, int seconds, LongSupplier begin, LongUnaryOperator commit) throws InterruptedException {
+        var start = new CountDownLatch(1);
+        var done = new CountDownLatch(threads);
+        var total = new AtomicLong();
+        var endNanos = new long[1];
+        for (var i = 0; i < threads; i++) {
+            var thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                var operations = 0L;
+                while (System.nanoTime() - endNanos[0] < 0) {
+                    operations += commit.applyAsLong(begin.getAsLong());
+                }
+                total.addAndGet(operations);
+                done.countDown();
+            });
+            thread.start();
+        }
+        endNanos[0] = System.nanoTime() + seconds * 1_000_000_000L;
+        start.countDown();
+        done.await();
+        return total.get();
+    }
+}
@@ -0,0 +1,102 @@
+package aa0ndrey.dependency_inversion_guide.step_6.postgres.transaction_manager;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionRegistryTest {
+
+    @Test
+    void staleIdDoesNotReachReusedSlot() {
+        var registry = new TransactionRegistry<String>(1);
+        var first = registry.register("first", Long.MAX_VALUE);
+        assertSame("first", registry.remove(first));
+        var second = registry.register("second", Long.MAX_VALUE);
+
+        assertNull(registry.remove(first));
+        assertNull(registry.get(first));
+        assertSame("second", registry.get(second));
+        assertThrows(RuntimeException.class, () -> registry.register("third", Long.MAX_VALUE));
+    }
+
+    @Test
+    void reapRemovesOnlyExpiredTransactions() {
+        var registry = new TransactionRegistry<String>(4);
+        var now = System.nanoTime();
+        var expired = registry.register("expired", now - TimeUnit.SECONDS.toNanos(10));
+        var live = registry.register("live", now + TimeUnit.SECONDS.toNanos(10));
+        var reaped = new ArrayList<String>();
+
+        registry.reap(TimeUnit.SECONDS.toNanos(1), reaped::add);
+
+        assertEquals(1, reaped.size());
+        assertSame("expired", reaped.get(0));
+        assertNull(registry.get(expired));
+        assertSame("live", registry.get(live));
+    }
+
+    //слоты постоянно освобождаются и занимаются заново с другим сроком, reap не должен откатить ни одну живую транзакцию
+    @Test
+    void reapNeverRemovesLiveTransactionOfReusedSlot() throws InterruptedException {
+        var registry = new TransactionRegistry<Object>(8);
+        var stop = new AtomicBoolean();
+        var wronglyReaped = new AtomicInteger();
+        var live = ConcurrentHashMap.newKeySet();
+        var executor = Executors.newFixedThreadPool(8);
+        var done = new CountDownLatch(8);
+        for (var t = 0; t < 8; t++) {
+            var expiredOwner = t % 2 == 0;
+            executor.execute(() -> {
+                while (!stop.get()) {
+                    var state = new Object();
+                    var now = System.nanoTime();
+                    if (expiredOwner) {
+                        //брошенная транзакция: остается в реестре, пока ее не снимет reap
+                        try {
+                            registry.register(state, now - TimeUnit.SECONDS.toNanos(10));
+                        } catch (RuntimeException e) {
+                            Thread.onSpinWait();
+                        }
+                        continue;
+                    }
+                    long id;
+                    try {
+                        id = registry.register(state, now + TimeUnit.SECONDS.toNanos(10));
+                    } catch (RuntimeException e) {
+                        continue;
+                    }
+                    live.add(state);
+                    if (registry.remove(id) == null) {
+                        wronglyReaped.incrementAndGet();
+                    }
+                    live.remove(state);
+                }
+                done.countDown();
+            });
+        }
+        var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        while (System.nanoTime() < deadline) {
+            registry.reap(0, state -> {
+                if (live.contains(state)) {
+                    wronglyReaped.incrementAndGet();
+                }
+            });
+        }
+        stop.set(true);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(0, wronglyReaped.get());
+    }
+}